@@ -0,0 +1,267 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class is a thread-safe version of Percolation: any number of threads may call open(),
+ * isOpen(), isFull() and percolates() on the same grid at the same time. No locks are used; all
+ * shared state is in two AtomicIntegerArrays updated with compare-and-set (CAS).
+ *
+ * The union-find links a root under another with one CAS on the root's link, so two threads
+ * can never link the same root. Roots are ordered by a fixed scramble of their index (random
+ * linking), which keeps the trees shallow without having to update sizes atomically, and finds
+ * use path halving, also with CAS. The OPEN, TOP and BOTTOM bits of a site live in one int. The
+ * flags only ever grow, which makes merging them safe: a thread that ORs flags into a root
+ * checks afterwards that it is still a root and otherwise repeats at the new root, and a thread
+ * that links a root reads the flags of the old root only after the link is in place.
+ *
+ * percolates() is a single volatile read. isFull() is exact once no open() is in progress;
+ * while a union is running it may briefly still report false for a site that is becoming full.
+ */
+public class ConcurrentPercolation {
+
+	private static final int OPEN = 1;		// The site is open.
+	private static final int TOP = 2;		// The component is connected to the top row.
+	private static final int BOTTOM = 4;	// The component is connected to the bottom row.
+	private static final int SPANNING = TOP | BOTTOM;
+
+	private final AtomicIntegerArray link;	// parent + 1 of every site, 0 for a root.
+	private final AtomicIntegerArray state;	// OPEN, TOP and BOTTOM bits of every site.
+
+	private volatile boolean isPercolate;	// Track whether the system percolates.
+	private final int dim;	// The number of sites per row/col.
+
+
+	/**
+	 * Construct a NxN grid site, with all sites blocked.
+	 * @param N the grid dimension
+	 */
+	public ConcurrentPercolation(int N) {
+
+		if (N <= 0 || N > 46340) {
+			throw new IllegalArgumentException("The input N must be positive and at most 46340!");
+		}
+
+		dim = N;
+		link = new AtomicIntegerArray(N * N);	// All zero: every site is its own root.
+		state = new AtomicIntegerArray(N * N);	// All zero: every site is blocked.
+	}
+
+	/**
+	 * This method checks whether the input indices are valid row and column indices.
+	 * If not, an IndexOutOfBoundsException is thrown.
+	 * @param i row index
+	 * @param j column index
+	 */
+	private void validateIndex(int i, int j) {
+		if (i < 1 || i > dim || j > dim || j < 1) {
+			throw new IndexOutOfBoundsException("The site index is out of bound!");
+		}
+	}
+
+	/**
+	 * This method gets the 0-based site index of the site at row i col j.
+	 */
+	private int getIndex(int i, int j) {
+		return dim * (i - 1) + (j - 1);
+	}
+
+	/**
+	 * This method returns the linking priority of root k, a fixed bijective scramble of k.
+	 */
+	private static int priority(int k) {
+		return k * 0x9e3779b1;
+	}
+
+	/**
+	 * This method finds the root of the component containing site k, with path halving. The
+	 * halving CAS may fail if another thread changed the link first, which is harmless.
+	 * @param k index of the site
+	 * @return a root that k was connected to at some point during the call
+	 */
+	private int find(int k) {
+		while (true) {
+			int p = link.get(k) - 1;
+			if (p < 0) return k;
+			int gp = link.get(p) - 1;
+			if (gp < 0) return p;
+			link.compareAndSet(k, p + 1, gp + 1);	// Link k to its grandparent.
+			k = gp;
+		}
+	}
+
+	/**
+	 * This method ORs flags into the root of the component containing site k, repeating at the
+	 * new root if that root is linked under another one in the meantime.
+	 * @param k index of any site
+	 * @param flags the TOP and BOTTOM bits to add
+	 */
+	private void addFlags(int k, int flags) {
+		while (true) {
+			int r = find(k);
+			int old = state.get(r);
+			int merged = old | flags;
+			if (merged == old || state.compareAndSet(r, old, merged)) {
+				if ((merged & SPANNING) == SPANNING) isPercolate = true;
+				if (link.get(r) == 0) return;	// Still a root, so the flags are in place.
+				k = r;		// r was linked meanwhile; its linker may have missed the flags.
+			}
+		}
+	}
+
+	/**
+	 * This method merges the components containing sites a and b.
+	 */
+	private void union(int a, int b) {
+		while (true) {
+			int ra = find(a);
+			int rb = find(b);
+			if (ra == rb) return;	// Already in the same component.
+
+			if (priority(ra) > priority(rb)) {	// Link the root with the lower priority.
+				int tmp = ra;
+				ra = rb;
+				rb = tmp;
+			}
+			if (link.compareAndSet(ra, 0, rb + 1)) {
+				int flags = state.get(ra) & SPANNING;	// Read only after the link is in place.
+				if (flags != 0) addFlags(rb, flags);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This method opens site (row i, column j) if it is not opened already.
+	 * @param i row index
+	 * @param j col index
+	 */
+	public void open(int i, int j) {
+
+		validateIndex(i, j);
+
+		int index = getIndex(i, j);
+		while (true) {
+			int old = state.get(index);
+			if ((old & OPEN) != 0) return;	// The site is already opened.
+			if (state.compareAndSet(index, old, old | OPEN)) break;
+		}
+
+		int flags = 0;
+		if (i == 1) flags |= TOP;
+		if (i == dim) flags |= BOTTOM;
+		if (flags != 0) addFlags(index, flags);
+
+		// The site is marked open before its neighbors are read, so of two neighbors opened at
+		// the same time at least one sees the other and connects them.
+		if (j > 1 && (state.get(index - 1) & OPEN) != 0) union(index, index - 1);
+		if (j < dim && (state.get(index + 1) & OPEN) != 0) union(index, index + 1);
+		if (i > 1 && (state.get(index - dim) & OPEN) != 0) union(index, index - dim);
+		if (i < dim && (state.get(index + dim) & OPEN) != 0) union(index, index + dim);
+	}
+
+	/**
+	 * This method returns true if a site specified at (row i, column j) is open, false otherwise.
+	 * @param i row index for the site.
+	 * @param j col index for the site.
+	 * @return true if a site specified at (row i, column j) is open, false otherwise.
+	 */
+	public boolean isOpen(int i, int j) {
+		validateIndex(i, j);
+		return (state.get(getIndex(i, j)) & OPEN) != 0;
+	}
+
+	/**
+	 * This method returns true if a site specified at (row i, column j) is full, false otherwise.
+	 * @param i row index for the site.
+	 * @param j col index for the site.
+	 * @return true if a site specified at (row i, column j) is full, false otherwise.
+	 */
+	public boolean isFull(int i, int j) {
+		validateIndex(i, j);
+
+		int k = getIndex(i, j);
+		while (true) {
+			int r = find(k);
+			if ((state.get(r) & TOP) != 0) return true;
+			if (link.get(r) == 0) return false;		// A root without TOP.
+			k = r;
+		}
+	}
+
+	/**
+	 * This method tells whether the system percolates. It returns true if yes, false otherwise.
+	 * The call is wait-free.
+	 * @return true if the system percolates, else otherwise.
+	 */
+	public boolean percolates() {
+		return isPercolate;
+	}
+
+
+	/**
+	 * Contention benchmark: the given number of threads open the same random 60% of the sites
+	 * of one shared N-by-N grid, first on a ConcurrentPercolation and then on a Percolation
+	 * guarded by a single lock, and the throughput of both is printed.
+	 * Usage: java ConcurrentPercolation [N] [threads]
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		final int N = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		final int threads = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+
+		final int[] order = new int[N * N];
+		SplittableRandom random = new SplittableRandom(42);
+		for (int k = 0; k < order.length; k++) {
+			int pick = random.nextInt(k + 1);
+			order[k] = order[pick];
+			order[pick] = k;
+		}
+		final int count = (int) (0.6 * order.length);
+
+		for (int round = 0; round < 3; round++) {	// The first rounds warm up the JIT.
+			final ConcurrentPercolation shared = new ConcurrentPercolation(N);
+			long lockFree = time(threads, new Opener() {
+				public void open(int i, int j) { shared.open(i, j); }
+			}, order, count, N);
+
+			final Percolation guarded = new Percolation(N);
+			long locked = time(threads, new Opener() {
+				public synchronized void open(int i, int j) { guarded.open(i, j); }
+			}, order, count, N);
+
+			System.out.printf("threads=%d  lock-free: %.1f Mops/s  single lock: %.1f Mops/s"
+					+ "  (percolates %b/%b)%n", threads, count / (lockFree / 1e3),
+					count / (locked / 1e3), shared.percolates(), guarded.percolates());
+		}
+	}
+
+	/** Target of the benchmark. */
+	private interface Opener {
+		void open(int i, int j);
+	}
+
+	/**
+	 * This method opens order[0 .. count) with the given number of threads, thread t taking
+	 * every threads-th site starting at t, and returns the elapsed time in nanoseconds.
+	 */
+	private static long time(final int threads, final Opener target, final int[] order,
+			final int count, final int N) throws InterruptedException {
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int k = first; k < count; k += threads) {
+						target.open(order[k] / N + 1, order[k] % N + 1);
+					}
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		for (Thread worker : workers) worker.start();
+		for (Thread worker : workers) worker.join();
+		return System.nanoTime() - start;
+	}
+
+}
@@ -0,0 +1,269 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class is a version of Percolation for grids too large for the on-heap arrays, i.e. N above
+ * 46,340 where N * N no longer fits in an int. Site indices are longs, and all union-find state
+ * lives off the Java heap, either in direct ByteBuffers or in a memory-mapped file on local disk.
+ * The API is the same as Percolation: open(), isOpen(), isFull() and percolates().
+ *
+ * Every site takes one 8-byte word: the low 3 bits are the OPEN, TOP and BOTTOM flags and the high
+ * 61 bits are the union-find link. A positive link is parent + 1, and a link x <= 0 marks a root
+ * whose component has 1 - x sites. So an all-zero word is a blocked site on its own, and freshly
+ * allocated buffers and freshly extended files need no initialization pass.
+ *
+ * The words are split into chunks of 2^27 sites (1 GB), since a single ByteBuffer is indexed by
+ * an int. A 100,000 x 100,000 grid needs 80 GB and should be backed by a file.
+ */
+public class LargePercolation implements Closeable {
+
+	private static final int CHUNK_SHIFT = 27;		// log2 of the number of sites per chunk.
+	private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	private static final long OPEN = 1;		// The site is open.
+	private static final long TOP = 2;		// The component is connected to the top row.
+	private static final long BOTTOM = 4;	// The component is connected to the bottom row.
+	private static final long SPANNING = TOP | BOTTOM;
+	private static final long FLAGS = 7;	// Mask of all flag bits.
+
+	/** Bytes of off-heap memory used per site. */
+	public static final int BYTES_PER_SITE = 8;
+
+	private final ByteBuffer[] chunks;	// The site words, 2^CHUNK_SHIFT sites per chunk.
+	private final FileChannel channel;	// The backing file, or null for direct buffers.
+
+	private boolean isPercolate;	// Track whether the system percolates.
+	private final long sites;	// The number of sites, N * N.
+	private final int dim;	// The number of sites per row/col.
+
+
+	/**
+	 * Construct a NxN grid site in direct (off-heap) memory, with all sites blocked.
+	 * @param N the grid dimension
+	 */
+	public LargePercolation(int N) {
+		this(N, null);
+	}
+
+	/**
+	 * Construct a NxN grid site, with all sites blocked. If file is not null the grid is kept in
+	 * that file through a memory mapping; the file is created, or truncated if it already exists.
+	 * @param N the grid dimension
+	 * @param file the backing file, or null to use direct memory
+	 */
+	public LargePercolation(int N, File file) {
+
+		if (N <= 0) {
+			throw new IllegalArgumentException("The input N must be positive!");
+		}
+
+		dim = N;
+		sites = (long) N * N;
+		isPercolate = false;	// The system does not percolate when all sites are blocked.
+
+		int count = (int) ((sites + CHUNK_MASK) >>> CHUNK_SHIFT);
+		chunks = new ByteBuffer[count];
+
+		if (file == null) {
+			channel = null;
+			for (int c = 0; c < count; c++) {
+				chunks[c] = ByteBuffer.allocateDirect(chunkBytes(c)).order(ByteOrder.nativeOrder());
+			}
+			return;
+		}
+
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.setLength(0);		// Drop any old content so all words read as zero.
+			raf.setLength(sites * BYTES_PER_SITE);
+			channel = raf.getChannel();
+			for (int c = 0; c < count; c++) {
+				long position = ((long) c << CHUNK_SHIFT) * BYTES_PER_SITE;
+				chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkBytes(c))
+						.order(ByteOrder.nativeOrder());
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Cannot map the grid onto " + file, e);
+		}
+	}
+
+	/**
+	 * This method returns the size in bytes of chunk c; only the last chunk can be partial.
+	 */
+	private int chunkBytes(int c) {
+		long first = (long) c << CHUNK_SHIFT;
+		return (int) (Math.min(CHUNK_MASK + 1, sites - first) * BYTES_PER_SITE);
+	}
+
+	private long word(long k) {
+		return chunks[(int) (k >>> CHUNK_SHIFT)].getLong((int) (k & CHUNK_MASK) * BYTES_PER_SITE);
+	}
+
+	private void setWord(long k, long w) {
+		chunks[(int) (k >>> CHUNK_SHIFT)].putLong((int) (k & CHUNK_MASK) * BYTES_PER_SITE, w);
+	}
+
+	/**
+	 * This method checks whether the input indices are valid row and column indices.
+	 * If not, an IndexOutOfBoundsException is thrown.
+	 * @param i row index
+	 * @param j column index
+	 */
+	private void validateIndex(int i, int j) {
+		if (i < 1 || i > dim || j > dim || j < 1) {
+			throw new IndexOutOfBoundsException("The site index is out of bound!");
+		}
+	}
+
+	/**
+	 * This method gets the 0-based site index of the site at row i col j.
+	 */
+	private long getIndex(int i, int j) {
+		return (long) dim * (i - 1) + (j - 1);
+	}
+
+	/**
+	 * This method finds the root of the component containing site k, with path halving.
+	 * @param k index of the site
+	 * @return the root of the component containing k
+	 */
+	private long find(long k) {
+		long w = word(k);
+		while ((w >> 3) > 0) {
+			long p = (w >> 3) - 1;
+			long pw = word(p);
+			if ((pw >> 3) <= 0) return p;	// The parent is the root.
+			setWord(k, (pw & ~FLAGS) | (w & FLAGS));	// Link k to its grandparent.
+			k = (pw >> 3) - 1;
+			w = word(k);
+		}
+		return k;
+	}
+
+	/**
+	 * This method merges the component with root r and the component containing site k, linking
+	 * the smaller under the larger and merging the TOP and BOTTOM flags at the new root.
+	 * @param r a root
+	 * @param k index of any site
+	 * @return the root of the merged component
+	 */
+	private long union(long r, long k) {
+		long s = find(k);
+		if (r == s) return r;	// Already in the same component.
+
+		long rw = word(r);
+		long sw = word(s);
+		if ((rw >> 3) > (sw >> 3)) {	// Sizes are stored as 1 - size, so r is the smaller one.
+			long tmp = r;
+			r = s;
+			s = tmp;
+			tmp = rw;
+			rw = sw;
+			sw = tmp;
+		}
+		long link = (rw >> 3) + (sw >> 3) - 1;	// 1 - (size(r) + size(s)).
+		setWord(r, (link << 3) | (rw & FLAGS) | (sw & SPANNING));
+		setWord(s, ((r + 1) << 3) | (sw & FLAGS));
+		return r;
+	}
+
+	/**
+	 * This method ORs the given flags into the word of site k.
+	 */
+	private void addFlags(long k, long flags) {
+		setWord(k, word(k) | flags);
+	}
+
+	/**
+	 * This method opens site (row i, column j) if it is not opened already.
+	 * @param i row index
+	 * @param j col index
+	 */
+	public void open(int i, int j) {
+
+		validateIndex(i, j);
+
+		long index = getIndex(i, j);
+		if ((word(index) & OPEN) != 0) return;	// The site is already opened.
+
+		long flags = OPEN;
+		if (i == 1) flags |= TOP;
+		if (i == dim) flags |= BOTTOM;
+		addFlags(index, flags);
+
+		long root = index;
+		if (j > 1 && (word(index - 1) & OPEN) != 0) root = union(root, index - 1);
+		if (j < dim && (word(index + 1) & OPEN) != 0) root = union(root, index + 1);
+		if (i > 1 && (word(index - dim) & OPEN) != 0) root = union(root, index - dim);
+		if (i < dim && (word(index + dim) & OPEN) != 0) root = union(root, index + dim);
+
+		if ((word(root) & SPANNING) == SPANNING) isPercolate = true;
+	}
+
+	/**
+	 * This method returns true if a site specified at (row i, column j) is open, false otherwise.
+	 * @param i row index for the site.
+	 * @param j col index for the site.
+	 * @return true if a site specified at (row i, column j) is open, false otherwise.
+	 */
+	public boolean isOpen(int i, int j) {
+		validateIndex(i, j);
+		return (word(getIndex(i, j)) & OPEN) != 0;
+	}
+
+	/**
+	 * This method returns true if a site specified at (row i, column j) is full, false otherwise.
+	 * @param i row index for the site.
+	 * @param j col index for the site.
+	 * @return true if a site specified at (row i, column j) is full, false otherwise.
+	 */
+	public boolean isFull(int i, int j) {
+		validateIndex(i, j);
+		return (word(find(getIndex(i, j))) & TOP) != 0;
+	}
+
+	/**
+	 * This method tells whether the system percolates. It returns true if yes, false otherwise.
+	 * @return true if the system percolates, else otherwise.
+	 */
+	public boolean percolates() {
+		return isPercolate;
+	}
+
+	/**
+	 * This method closes the backing file, if any. The grid must not be used afterwards.
+	 */
+	public void close() throws IOException {
+		if (channel != null) channel.close();
+	}
+
+
+	/**
+	 * Opens random sites of an N-by-N grid until it percolates and prints the fraction opened.
+	 * Usage: java LargePercolation N [file]
+	 */
+	public static void main(String[] args) throws IOException {
+		int N = Integer.parseInt(args[0]);
+		File file = args.length > 1 ? new File(args[1]) : null;
+
+		LargePercolation perco = new LargePercolation(N, file);
+		long count = 0;		// The number of open sites.
+		while (!perco.percolates()) {
+			int row = (int) (Math.random() * N) + 1;
+			int col = (int) (Math.random() * N) + 1;
+			if (perco.isOpen(row, col)) continue;
+			perco.open(row, col);
+			count++;
+		}
+		perco.close();
+
+		System.out.println((double) count / ((double) N * N));
+	}
+
+}
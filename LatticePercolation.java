@@ -0,0 +1,302 @@
+import java.util.Arrays;
+
+/**
+ * This class generalizes Percolation to other lattices: rectangular R-by-C grids, L-by-L-by-L
+ * cubic lattices and in general boxes of up to 4 dimensions, with either site percolation (sites
+ * are opened, as in Percolation) or bond percolation (every site is present and the edges
+ * between neighboring sites are opened). The union-find is Percolation's, see UnionFind: one
+ * int[] of parent links with negated sizes at the roots, path halving, and the TOP/BOTTOM flags
+ * merged at the new root by every union.
+ *
+ * The first coordinate is the spanning direction: sites with first coordinate 1 form the top
+ * face and sites with first coordinate L1 form the bottom face, and the lattice percolates when
+ * an open cluster connects the two faces. All coordinates are 1-based, like in Percolation.
+ *
+ * Sites are numbered in row-major order. The bonds along axis a are numbered separately in
+ * row-major order over the box whose side a is one shorter, and the bonds of axis a follow
+ * those of axis a - 1; openElement() uses this numbering to drive experiments.
+ */
+public class LatticePercolation {
+
+	/**
+	 * SITE: sites are opened and neighboring open sites are connected.
+	 * BOND: all sites are present and the bonds between neighboring sites are opened.
+	 */
+	public enum Mode { SITE, BOND }
+
+	private static final byte OPEN = 1;		// The site is open.
+	private static final byte TOP = 2;		// The component is connected to the top face.
+	private static final byte BOTTOM = 4;	// The component is connected to the bottom face.
+	private static final byte SPANNING = TOP | BOTTOM;
+	private static final int BOND_SHIFT = 3;	// Bit 3 + a: the bond to the next site along
+												// axis a is open.
+
+	private final Mode mode;	// Site or bond percolation.
+	private final int[] shape;	// The side lengths of the box.
+	private final int[] stride;	// Index step of one unit along each axis.
+	private final int[] bondStart;	// Number of the first bond along each axis, and the total.
+	private final int sites;	// The number of sites.
+
+	private final int[] parent;	// Union-find links, or -size of the component at a root.
+	private final byte[] state;	// OPEN, TOP, BOTTOM and bond bits of every site.
+
+	private boolean isPercolate;	// Track whether the lattice percolates.
+	private int opened;		// The number of open sites or bonds.
+
+
+	/**
+	 * Construct a lattice with the given side lengths, with all sites or bonds closed.
+	 * @param mode site or bond percolation
+	 * @param shape the side lengths, the first one in the spanning direction
+	 */
+	public LatticePercolation(Mode mode, int... shape) {
+		if (shape.length < 1 || shape.length > 4) {
+			throw new IllegalArgumentException("The lattice must have 1 to 4 dimensions!");
+		}
+
+		long count = 1;
+		for (int side : shape) {
+			if (side <= 0) {
+				throw new IllegalArgumentException("The side lengths must be positive!");
+			}
+			count *= side;
+			if (count >= Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("The lattice has too many sites!");
+			}
+		}
+
+		this.mode = mode;
+		this.shape = shape.clone();
+		sites = (int) count;
+
+		stride = new int[shape.length];
+		int step = 1;
+		for (int a = shape.length - 1; a >= 0; a--) {	// Row-major: the last axis is contiguous.
+			stride[a] = step;
+			step *= shape[a];
+		}
+
+		bondStart = new int[shape.length + 1];
+		for (int a = 0; a < shape.length; a++) {
+			bondStart[a + 1] = bondStart[a] + sites / shape[a] * (shape[a] - 1);
+		}
+
+		parent = new int[sites];
+		state = new byte[sites];
+		reset();
+	}
+
+	/**
+	 * This method returns a rectangular rows-by-cols lattice, spanning from row 1 to row rows.
+	 */
+	public static LatticePercolation rectangular(Mode mode, int rows, int cols) {
+		return new LatticePercolation(mode, rows, cols);
+	}
+
+	/**
+	 * This method returns an L-by-L-by-L cubic lattice, spanning from face to opposite face.
+	 */
+	public static LatticePercolation cubic(Mode mode, int L) {
+		return new LatticePercolation(mode, L, L, L);
+	}
+
+	/**
+	 * This method closes all sites and bonds again, so the lattice can be reused.
+	 */
+	public void reset() {
+		Arrays.fill(parent, -1);
+		Arrays.fill(state, (byte) 0);
+		isPercolate = false;
+		opened = 0;
+
+		if (mode == Mode.BOND) {	// All sites are present, so the faces are flagged now.
+			int face = stride[0];
+			for (int k = 0; k < face; k++) {
+				state[k] |= OPEN | TOP;
+				state[sites - face + k] |= OPEN | BOTTOM;
+			}
+			for (int k = face; k < sites - face; k++) {
+				state[k] |= OPEN;
+			}
+			if (shape[0] == 1) isPercolate = true;	// The two faces are the same.
+		}
+	}
+
+	/**
+	 * This method converts 1-based coordinates to a site index, checking them.
+	 */
+	private int getIndex(int[] coords) {
+		if (coords.length != shape.length) {
+			throw new IllegalArgumentException("Expected " + shape.length + " coordinates!");
+		}
+		int index = 0;
+		for (int a = 0; a < shape.length; a++) {
+			if (coords[a] < 1 || coords[a] > shape[a]) {
+				throw new IndexOutOfBoundsException("The site index is out of bound!");
+			}
+			index += (coords[a] - 1) * stride[a];
+		}
+		return index;
+	}
+
+	/**
+	 * This method returns the 0-based coordinate of site k along axis a.
+	 */
+	private int coordinate(int k, int a) {
+		return k / stride[a] % shape[a];
+	}
+
+	/**
+	 * This method merges the component with root r and the component containing site k.
+	 * @return the root of the merged component
+	 */
+	private int union(int r, int k) {
+		int s = UnionFind.find(parent, k);
+		if (r == s) return r;	// Already in the same component.
+		return UnionFind.link(parent, state, r, s, SPANNING);
+	}
+
+	/**
+	 * This method opens the site at the given coordinates, in SITE mode.
+	 * @param coords the 1-based coordinates of the site
+	 */
+	public void open(int... coords) {
+		if (mode != Mode.SITE) {
+			throw new UnsupportedOperationException("Sites are always open in bond percolation!");
+		}
+		openSite(getIndex(coords));
+	}
+
+	/**
+	 * This method opens the bond between the site at the given coordinates and the next site
+	 * along the given axis, in BOND mode.
+	 * @param axis the 0-based axis of the bond
+	 * @param coords the 1-based coordinates of the site, below shape[axis] along axis
+	 */
+	public void openBond(int axis, int... coords) {
+		if (mode != Mode.BOND) {
+			throw new UnsupportedOperationException("Bonds are not used in site percolation!");
+		}
+		int index = getIndex(coords);
+		if (axis < 0 || axis >= shape.length || coords[axis] == shape[axis]) {
+			throw new IndexOutOfBoundsException("The bond index is out of bound!");
+		}
+		openBond(index, axis);
+	}
+
+	/**
+	 * This method returns the number of sites in SITE mode or bonds in BOND mode, i.e. the
+	 * number of things that experiments open.
+	 */
+	public int elements() {
+		return mode == Mode.SITE ? sites : bondStart[shape.length];
+	}
+
+	/**
+	 * This method opens site e in SITE mode or bond e in BOND mode, numbered as described in
+	 * the class comment, from 0 to elements() - 1.
+	 */
+	public void openElement(int e) {
+		if (e < 0 || e >= elements()) {
+			throw new IndexOutOfBoundsException("The element index is out of bound!");
+		}
+		if (mode == Mode.SITE) {
+			openSite(e);
+			return;
+		}
+
+		int axis = 0;
+		while (e >= bondStart[axis + 1]) axis++;
+		int rest = e - bondStart[axis];
+		int index = 0;
+		for (int a = shape.length - 1; a >= 0; a--) {	// Row-major over the shortened box.
+			int side = a == axis ? shape[a] - 1 : shape[a];
+			index += rest % side * stride[a];
+			rest /= side;
+		}
+		openBond(index, axis);
+	}
+
+	private void openSite(int index) {
+		if ((state[index] & OPEN) != 0) return;	// The site is already opened.
+
+		byte flags = OPEN;
+		if (index < stride[0]) flags |= TOP;
+		if (index >= sites - stride[0]) flags |= BOTTOM;
+		state[index] = flags;
+		opened++;
+
+		int root = index;
+		for (int a = 0; a < shape.length; a++) {
+			int c = coordinate(index, a);
+			if (c > 0 && (state[index - stride[a]] & OPEN) != 0) {
+				root = union(root, index - stride[a]);
+			}
+			if (c < shape[a] - 1 && (state[index + stride[a]] & OPEN) != 0) {
+				root = union(root, index + stride[a]);
+			}
+		}
+		if ((state[root] & SPANNING) == SPANNING) isPercolate = true;
+	}
+
+	private void openBond(int index, int axis) {
+		byte bit = (byte) (1 << (BOND_SHIFT + axis));
+		if ((state[index] & bit) != 0) return;	// The bond is already opened.
+		state[index] |= bit;
+		opened++;
+
+		int root = union(UnionFind.find(parent, index), index + stride[axis]);
+		if ((state[root] & SPANNING) == SPANNING) isPercolate = true;
+	}
+
+	/**
+	 * This method tells whether the site at the given coordinates is open; in BOND mode every
+	 * site is.
+	 */
+	public boolean isOpen(int... coords) {
+		return (state[getIndex(coords)] & OPEN) != 0;
+	}
+
+	/**
+	 * This method tells whether the site at the given coordinates is connected to the top face.
+	 */
+	public boolean isFull(int... coords) {
+		return (state[UnionFind.find(parent, getIndex(coords))] & TOP) != 0;
+	}
+
+	/**
+	 * This method tells whether the lattice percolates from the top face to the bottom face.
+	 */
+	public boolean percolates() {
+		return isPercolate;
+	}
+
+	/**
+	 * This method returns the number of open sites (SITE mode) or bonds (BOND mode).
+	 */
+	public int opened() {
+		return opened;
+	}
+
+	public Mode mode() { return mode; }
+	public int[] shape() { return shape.clone(); }
+
+
+	public static void main(String[] args) {
+
+		LatticePercolation bonds = rectangular(Mode.BOND, 3, 2);
+		bonds.openBond(0, 1, 1);	// (1, 1) - (2, 1)
+		bonds.openBond(1, 2, 1);	// (2, 1) - (2, 2)
+		System.out.println("Bond grid percolates: " + bonds.percolates());
+		bonds.openBond(0, 2, 2);	// (2, 2) - (3, 2)
+		System.out.println("Bond grid percolates: " + bonds.percolates());
+
+		LatticePercolation cube = cubic(Mode.SITE, 3);
+		cube.open(1, 2, 2);
+		cube.open(2, 2, 2);
+		cube.open(3, 2, 2);
+		System.out.println("Cube percolates: " + cube.percolates());
+		System.out.println("Corner (1, 1, 1) full: " + cube.isFull(1, 1, 1));
+	}
+
+}
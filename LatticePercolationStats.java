@@ -0,0 +1,113 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class is the PercolationStats driver for LatticePercolation: it estimates the site or
+ * bond percolation threshold of a rectangular, cubic or other box lattice. The experiments run
+ * through PercolationTrial.runAll() like those of PercolationStats, on runners that each wrap a
+ * lattice of their own: every experiment opens the sites or bonds of one random permutation
+ * until the lattice percolates, and its threshold is the fraction opened. Experiment k uses the
+ * seed PercolationTrial.seed(seed, k), so the statistics are the same for any number of threads.
+ */
+public class LatticePercolationStats {
+
+	private final PercolationStats stats;	// The statistics of the thresholds.
+
+	/**
+	 * This method performs T independent experiments on a lattice of the given shape.
+	 * @param mode site or bond percolation.
+	 * @param shape the side lengths of the lattice, the first one in the spanning direction.
+	 * @param T the number of experiments the method conducts.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 */
+	public LatticePercolationStats(LatticePercolation.Mode mode, int[] shape, int T, long seed) {
+		this(mode, shape, T, seed, 1);
+	}
+
+	/**
+	 * This method performs T independent experiments on a lattice of the given shape, spread
+	 * over the given number of threads.
+	 * @param mode site or bond percolation.
+	 * @param shape the side lengths of the lattice, the first one in the spanning direction.
+	 * @param T the number of experiments the method conducts.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 * @param threads the number of threads to use.
+	 */
+	public LatticePercolationStats(LatticePercolation.Mode mode, int[] shape, int T, long seed,
+			int threads) {
+		if (T <= 0 || threads <= 0) {
+			throw new IllegalArgumentException();
+		}
+		stats = summarize(mode, shape, T, 0.0, seed, threads);
+	}
+
+	/**
+	 * This method keeps performing experiments on a lattice of the given shape until the
+	 * half-width of the 95% confidence interval drops below epsilon, or maxTrials experiments
+	 * have been done, as the early-stopping constructor of PercolationStats does.
+	 * @param mode site or bond percolation.
+	 * @param shape the side lengths of the lattice, the first one in the spanning direction.
+	 * @param epsilon the wanted half-width of the confidence interval.
+	 * @param maxTrials the most experiments to conduct.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 * @param threads the number of threads to use.
+	 */
+	public LatticePercolationStats(LatticePercolation.Mode mode, int[] shape, double epsilon,
+			int maxTrials, long seed, int threads) {
+		if (maxTrials <= 0 || threads <= 0 || !(epsilon > 0.0)) {
+			throw new IllegalArgumentException();
+		}
+		stats = summarize(mode, shape, maxTrials, epsilon, seed, threads);
+	}
+
+	/**
+	 * This method runs the experiments, stopping early as described at
+	 * PercolationTrial.runUntil() when epsilon is positive.
+	 */
+	private static PercolationStats summarize(LatticePercolation.Mode mode, int[] shape, int T,
+			double epsilon, long seed, int threads) {
+		PercolationTrial[] pool = new PercolationTrial[threads];	// One lattice per task.
+		for (int t = 0; t < threads; t++) {
+			pool[t] = new PercolationTrial(new LatticePercolation(mode, shape));
+		}
+
+		ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+		try {
+			return new PercolationStats(PercolationTrial.runUntil(0, seed, T, epsilon, executor,
+					threads, pool));	// The runners keep their lattices, so N is unused.
+		}
+		finally {
+			if (executor != null) executor.shutdownNow();
+		}
+	}
+
+	public double mean() { return stats.mean(); }
+	public double stddev() { return stats.stddev(); }
+	public double confidenceLo() { return stats.confidenceLo(); }
+	public double confidenceHi() { return stats.confidenceHi(); }
+	public int trials() { return stats.trials(); }
+
+	/**
+	 * Usage: java LatticePercolationStats site|bond T L1 [L2 [L3 [L4]]]
+	 * For example "bond 100 64 64" for square bond percolation or "site 50 32 32 32" for
+	 * cubic site percolation. All available processors are used.
+	 */
+	public static void main(String[] args) {
+		LatticePercolation.Mode mode = LatticePercolation.Mode.valueOf(args[0].toUpperCase());
+		int T = Integer.parseInt(args[1]);
+		int[] shape = new int[args.length - 2];
+		for (int a = 0; a < shape.length; a++) {
+			shape[a] = Integer.parseInt(args[a + 2]);
+		}
+
+		LatticePercolationStats stats = new LatticePercolationStats(mode, shape, T,
+				new SplittableRandom().nextLong(), Runtime.getRuntime().availableProcessors());
+
+		System.out.println(stats.confidenceLo());
+		System.out.println(stats.confidenceHi());
+		System.out.println(stats.mean());
+		System.out.println(stats.stddev());
+	}
+
+}
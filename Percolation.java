@@ -1,6 +1,21 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
 /**
  * This method is an improved version of Percolation class. Only one UF object is used instead.
  * Memory use is decreased tremendously with an increasing value of dimension N.
+ * The union-find is built in: a single int[] holds the parent links, and each root stores the
+ * negated size of its component. Finding uses path halving, and union() returns the new root
+ * with the top/bottom flags already merged, so open() costs at most one find per neighbor.
  * 
  * TODO:
  * 1. As normal, always notice the instance/global variables and keep an eye on them for every
@@ -29,17 +44,61 @@
  */
 public class Percolation {
 
-	private WeightedQuickUnionUF uf;		// Union find data structure to check whether a site
-	 										// is connected to the top row.
-	private boolean[] connectTop;	// Check whether a site is connected to the top row.
-	private boolean[] connectBottom;	// Check whether a site is connected to the bottom row.
-	private boolean[] openStatus;	// Track whether one site is open or blocked, true for open sites.
-									// false for blocked sites.
+	private int[] parent;	// Union-find links: parent[k] is the parent of site k, or, if k is a
+							// root, -size of its component.
+	private byte[] state;	// Status bits of every site: OPEN, TOP and BOTTOM. TOP and BOTTOM are
+							// only meaningful at a root, where they describe the whole component.
+	
+	private static final byte OPEN = 1;		// The site is open.
+	private static final byte TOP = 2;		// The component is connected to the top row.
+	private static final byte BOTTOM = 4;	// The component is connected to the bottom row.
+	private static final byte SPANNING = TOP | BOTTOM;
+	private static final byte ADDED = 8;	// Opened by a bulk call but not connected yet.
+	
+	/**
+	 * Bytes of heap used per site: a 4-byte parent link plus a 1-byte state. An N-by-N grid needs
+	 * about BYTES_PER_SITE * N * N bytes, e.g. 2 GB for N = 20,000. PERIODIC_BOTH adds 4 bytes.
+	 */
+	public static final int BYTES_PER_SITE = 5;
+	
+	private static final int MAGIC = 0x50455243;	// "PERC", the first word of a snapshot.
+	private static final int VERSION = 1;	// The snapshot layout version.
+	private static final int HEADER = 34;	// Bytes of the snapshot up to the bit planes.
 	
 	
 	private boolean isPercolate;	// Track whether the system percolates.
-	private final int max;	// The size of the arrays that check open status.
-	private final int dim;	// The number of sites per row/col.
+	private int openSites;	// The number of open sites.
+	private int clusters;	// The number of components of open sites.
+	private int largest;	// The size of the largest component.
+	private int topLargest;	// The size of the largest component connected to the top row.
+	private int fullSites;	// The number of sites connected to the top row.
+	private int max;	// The number of sites in use, N * N + 1.
+	private int dim;	// The number of sites per row/col.
+	private final Boundary boundary;	// How the edges of the grid are treated.
+	
+	private int[] leftOf;	// leftOf[j]: index offset of the left neighbor of a site
+							// in column j, or 0 if there is none.
+	private int[] rightOf;	// rightOf[j]: the same for the right neighbor.
+	private int[] aboveOf;	// aboveOf[i]: the same for the neighbor above a site in row i.
+	private int[] belowOf;	// belowOf[i]: the same for the neighbor below.
+	private byte bottomFlag;	// The flag of bottom row sites, BOTTOM or, on a torus, 0.
+	
+	private int[] offsets;	// PERIODIC_BOTH only: rows from the parent down to the site,
+							// counted without wrapping. Otherwise null.
+	private int lastOffset;	// Offset of the site from its root found by the last findOffset().
+	
+	/**
+	 * The boundary conditions of the grid.
+	 * OPEN: sites on the edges have fewer neighbors. The system percolates when a cluster
+	 *       connects the top row to the bottom row.
+	 * PERIODIC_HORIZONTAL: the first and last columns are neighbors (a cylinder). The system
+	 *       percolates when a cluster connects the top row to the bottom row.
+	 * PERIODIC_BOTH: the first and last rows are neighbors as well (a torus). The system
+	 *       percolates when a cluster wraps around vertically, i.e. contains a path from a site
+	 *       back to itself that goes once round the torus top to bottom. isFull() still means
+	 *       connected to the first row.
+	 */
+	public enum Boundary { OPEN, PERIODIC_HORIZONTAL, PERIODIC_BOTH }
 	
 	
 	/**
@@ -47,26 +106,91 @@ public class Percolation {
 	 * @param N the grid dimension
 	 */
 	public Percolation(int N) {
+		this(N, Boundary.OPEN);
+	}
+	
+	/**
+	 * Construct a NxN grid site with the given boundary conditions, with all sites blocked.
+	 * Periodic boundaries need no extra storage per site, except PERIODIC_BOTH, which keeps
+	 * one int per site to detect wrapping.
+	 * @param N the grid dimension
+	 * @param boundary the boundary conditions
+	 */
+	public Percolation(int N, Boundary boundary) {
 		
 		if (N <= 0) {
 			throw new IllegalArgumentException("The input N must be positive!");
 		}
+		if (boundary == null) {
+			throw new IllegalArgumentException("The boundary conditions must not be null!");
+		}
 		
+		this.boundary = boundary;
+		isPercolate = false;	// The system does not percolate when all sites are blocked.
+		resize(N);
+
+	}
+	
+	/**
+	 * This method sets the grid dimension to N: it builds the neighbor offset tables for the
+	 * boundary mode and allocates the site arrays, unless the current ones already hold
+	 * N * N + 1 sites.
+	 */
+	private void resize(int N) {
 		dim = N;
+		boolean wrapColumns = boundary != Boundary.OPEN;
+		boolean wrapRows = boundary == Boundary.PERIODIC_BOTH;
+		
+		leftOf = new int[N + 1];
+		rightOf = new int[N + 1];
+		aboveOf = new int[N + 1];
+		belowOf = new int[N + 1];
+		for (int k = 1; k <= N; k++) {
+			leftOf[k] = k > 1 ? -1 : (wrapColumns ? N - 1 : 0);
+			rightOf[k] = k < N ? 1 : (wrapColumns ? 1 - N : 0);
+			aboveOf[k] = k > 1 ? -N : (wrapRows ? (N - 1) * N : 0);
+			belowOf[k] = k < N ? N : (wrapRows ? (1 - N) * N : 0);
+		}
+		bottomFlag = wrapRows ? 0 : BOTTOM;
+
 		max = N * N + 1;
-		isPercolate = false;	// The system does not percolate when all sites are blocked.
+		if (parent != null && parent.length >= max) return;
 		
-		uf = new WeightedQuickUnionUF(max);		// Create a UF object to model the system.
-		openStatus = new boolean[max];	// Array to track whether a site is open or blocked.
-		connectBottom = new boolean[max]; // Track whether a site is connected to the bottom row.
-		connectTop = new boolean[max]; // Whether a site is connected to the top row.
+		parent = new int[max];		// Every site starts as its own component of size 1.
+		state = new byte[max];		// All sites are blocked and unconnected as default.
 		
-		for (int i = 0; i < max; i++) {
-			openStatus[i] = false;		// All sites are blocked as default.
-			connectBottom[i] = false;	// Initialize the status as false since they are blocked.
-			connectTop[i] = false;	// Initialize the status as false since they are blocked.
+		Arrays.fill(parent, -1);
+		if (wrapRows) offsets = new int[max];
+	}
+	
+	/**
+	 * This method blocks all sites again, so the same instance can be reused for another
+	 * experiment without allocating new arrays.
+	 */
+	public void reset() {
+		Arrays.fill(parent, 0, max, -1);
+		Arrays.fill(state, 0, max, (byte) 0);
+		if (offsets != null) Arrays.fill(offsets, 0, max, 0);
+		isPercolate = false;
+		openSites = 0;
+		clusters = 0;
+		largest = 0;
+		topLargest = 0;
+		fullSites = 0;
+	}
+	
+	/**
+	 * This method blocks all sites and makes the grid N-by-N, with the same boundary conditions.
+	 * The site arrays are kept when they are large enough, so an instance built for the largest
+	 * grid of a series can run all the others without allocating.
+	 * @param N the new grid dimension
+	 */
+	public void reset(int N) {
+		if (N <= 0) {
+			throw new IllegalArgumentException("The input N must be positive!");
 		}
-
+		resize(N);
+		reset();
 	}
 	
 	/**
@@ -93,17 +217,115 @@ public class Percolation {
 	}
 	
 	/**
-	 * This method checks whether a site is connected to both top and bottom row.
-	 * If yes, the system percolates, if not, the system does not percolate.
-	 * @param i row index
-	 * @param j col index
-	 * @return whether the site is connected to both top and bottom row of the system.
+	 * This method finds the root of the component containing site k. Path halving is applied on
+	 * the way up: every other site on the path is re-linked to its grandparent.
+	 * @param k index of the site
+	 * @return the root of the component containing k
+	 */
+	private int find(int k) {
+		if (offsets != null) return findOffset(k);	// Links must keep their offsets.
+		return UnionFind.find(parent, k);
+	}
+	
+	/**
+	 * This method is find() for the PERIODIC_BOTH mode. It also adds up the vertical offsets
+	 * along the path and leaves the offset of k from its root in lastOffset.
+	 * @param k index of the site
+	 * @return the root of the component containing k
+	 */
+	private int findOffset(int k) {
+		int offset = 0;
+		while (parent[k] >= 0) {
+			int p = parent[k];
+			if (parent[p] >= 0) {
+				offsets[k] += offsets[p];	// Halve the path, keeping k's offset right.
+				parent[k] = parent[p];
+			}
+			offset += offsets[k];
+			k = parent[k];
+		}
+		lastOffset = offset;
+		return k;
+	}
+	
+	/**
+	 * This method merges the component with root r and the component containing site k.
+	 * @param r a root
+	 * @param k index of any site
+	 * @return the root of the merged component
+	 */
+	private int union(int r, int k) {
+		int s = find(k);
+		if (r == s) return r;	// Already in the same component.
+		return link(r, s);
+	}
+	
+	/**
+	 * This method merges two different roots r and s. The smaller component is linked under the
+	 * larger one, and the TOP and BOTTOM flags are merged into the surviving root in the same
+	 * step, see UnionFind.link(); the counters are updated as well.
+	 * @return the surviving root
 	 */
-	private boolean checkPercolate(int i, int j) {
-		int index = dim * (i - 1) + j;
-		return connectBottom[uf.find(index)] && connectTop[uf.find(index)];
-			// If the site is connected to both the top and bottom after it's open, the
-			// system percolates.
+	private int link(int r, int s) {
+		boolean topR = (state[r] & TOP) != 0;
+		boolean topS = (state[s] & TOP) != 0;
+		if (topR && !topS) fullSites -= parent[s];	// The sites of s become full.
+		if (topS && !topR) fullSites -= parent[r];	// The sites of r become full.
+		
+		r = UnionFind.link(parent, state, r, s, SPANNING);
+		
+		clusters--;
+		largest = Math.max(largest, -parent[r]);
+		if (topR || topS) topLargest = Math.max(topLargest, -parent[r]);
+		return r;
+	}
+	
+	/**
+	 * This method connects the site at index, whose component has root r, to its neighbor n
+	 * if n is open. The neighbor lies dy rows below the site (-1, 0 or 1) before wrapping; a
+	 * missing neighbor is passed as the site itself, which is a harmless no-op.
+	 * @return the root of the component containing the site afterwards
+	 */
+	private int connect(int r, int index, int n, int dy) {
+		if ((state[n] & (OPEN | ADDED)) != OPEN) return r;	// Blocked, or marked by a bulk
+															// open and linked later.
+		if (offsets == null) return union(r, n);
+		
+		int s = findOffset(n);
+		int offsetN = lastOffset;		// Rows from s down to n.
+		findOffset(index);
+		int offsetI = lastOffset;		// Rows from r down to the site.
+		
+		if (r == s) {
+			if (offsetN != offsetI + dy) isPercolate = true;	// The cluster already reaches n
+															// the other way round the torus.
+			return r;
+		}
+		int root = link(r, s);
+		if (root == r) offsets[s] = offsetI + dy - offsetN;
+		else offsets[r] = offsetN - offsetI - dy;
+		return root;
+	}
+	
+	/**
+	 * This method marks a blocked site open as a new component of its own, sets TOP or BOTTOM
+	 * if it is in the top or bottom row, and counts it in the cluster statistics.
+	 * @param index index of the site.
+	 * @param i row index of the site.
+	 */
+	private void markOpen(int index, int i) {
+		byte flags = OPEN;
+		if (i == 1) flags |= TOP;
+		if (i == dim) flags |= bottomFlag;
+		state[index] = flags;
+		
+		openSites++;
+		clusters++;
+		largest = Math.max(largest, 1);
+		if (i == 1) {
+			fullSites++;
+			topLargest = Math.max(topLargest, 1);
+		}
 	}
 	
 	/**
@@ -115,149 +337,103 @@ public class Percolation {
 		validateIndex(i, j);
 		
 		int index = getIndex(i, j);
-		if (openStatus[index]) return;	// The site is already opened.
-		openStatus[index] = true;	// Open the site.
+		if ((state[index] & OPEN) != 0) return;	// The site is already opened.
+		markOpen(index, i);		// Open the site, with TOP or BOTTOM if it is in the top or
+								// bottom row.
 		
-		if (dim == 1) {		// If the system has only one site.
-			isPercolate = true;		// The system percolates when the one site is open.
-			connectBottom[uf.find(index)] = true;
-			connectTop[uf.find(index)] = true;
-			return;		// No need to check anything else.
-		}
-		
-		if (i == 1 && j == 1) {	// Upper-left corner site.
-			connectTop[uf.find(index)] = true;
-			checkRight(i, j);
-			checkBelow(i, j);
-		}
-		
-		else if (i == 1 && j == dim) {
-									// Upper-right corner site.
-			connectTop[uf.find(index)] = true;
-			checkLeft(i, j);
-			checkBelow(i, j);
-			
-		}
-		
-		else if (i == dim && j == 1) {
-									// Lower-left corner site.
-			connectBottom[uf.find(index)] = true;
-			checkAbove(i, j);
-			checkRight(i, j);
-			
-		}
-		
-		else if (i == dim && j == dim) {
-									// Lower-right corner site.
-			connectBottom[uf.find(index)] = true;
-			checkAbove(i, j);
-			checkLeft(i, j);
-			
-		}
-		
-		else if (i == 1 && j < dim && j > 1) {	
-									// Top row sites except corners.
-			connectTop[uf.find(index)] = true;
-			checkLeft(i, j);
-			checkBelow(i, j);
-			checkRight(i, j);
-			
-		}
-		
-		else if (i == dim && j < dim && j > 1) {
-									// Bottom row sites except corners.
-			connectBottom[uf.find(index)] = true;
-			checkLeft(i, j);
-			checkRight(i, j);
-			checkAbove(i, j);
-			
+		connectNeighbors(index, i, j);
+	}
+	
+	/**
+	 * This method connects an opened site to its four neighbors. The neighbor offsets come from
+	 * the tables built for the boundary mode, so there is no special case for the boundary.
+	 * @param index index of the site.
+	 * @param i row index of the site.
+	 * @param j col index of the site.
+	 */
+	private void connectNeighbors(int index, int i, int j) {
+		int root = index;	// A newly opened site is still a component of its own.
+		root = connect(root, index, index + leftOf[j], 0);
+		root = connect(root, index, index + rightOf[j], 0);
+		root = connect(root, index, index + aboveOf[i], -1);
+		root = connect(root, index, index + belowOf[i], 1);
+		
+		if ((state[root] & SPANNING) == SPANNING) isPercolate = true;
+									// Once the site percolates, the system percolates from
+									// this time onwards.
+	}
+	
+	/**
+	 * This method opens many sites at once. All sites are marked open first and then connected
+	 * in a single row-major sweep, which gives the same isFull() and percolates() results as
+	 * calling open() for each site. Sites that are already open are ignored.
+	 * @param rows row indices of the sites to open.
+	 * @param cols col indices of the sites to open, cols[k] belongs to rows[k].
+	 */
+	public void openAll(int[] rows, int[] cols) {
+		if (rows.length != cols.length) {
+			throw new IllegalArgumentException("The row and column arrays must have equal length!");
 		}
-		
-		else if (j == 1 && i > 1 && i < dim) {	
-									// Left-most column sites except corners.
-			checkAbove(i, j);
-			checkRight(i, j);
-			checkBelow(i, j);
+		for (int k = 0; k < rows.length; k++) {
+			validateIndex(rows[k], cols[k]);	// Validate everything before changing any state.
 		}
 		
-		else if (j == dim && i > 1 && i < dim) {
-									// Right-most column sites except corners.
-			checkAbove(i, j);
-			checkBelow(i, j);
-			checkLeft(i, j);
+		int[] added = new int[rows.length];		// Indices of the sites opened by this call.
+		int count = 0;
+		for (int k = 0; k < rows.length; k++) {
+			int index = getIndex(rows[k], cols[k]);
+			if (mark(index, rows[k])) added[count++] = index;
 		}
 		
-		else {	// The rest of the sites, aka, sites that have 4 sites around it.
-			checkAbove(i, j);
-			checkBelow(i, j);
-			checkLeft(i, j);
-			checkRight(i, j);
+		Arrays.sort(added, 0, count);		// Row-major order.
+		for (int k = 0; k < count; k++) {
+			connectAdded(added[k]);
 		}
-		
-		if (checkPercolate(i, j)) isPercolate = true;	// Once the site percolates, the system
-											// percolates from this time onwards.
-
 	}
 	
-	
-	
 	/**
-	 * These 4 private methods checks all site status around the site to be opened, aka the site 
-	 * on the left, right, top and bottom. The method then makes them the same component if the
-	 * Neighboring site is also open. The connectTop and connectBottom flags are also updated.
-	 * 
-	 * @param i row index of the site to be opened.
-	 * @param j col index of the site to be opened.
+	 * This method opens every site whose bit is set in mask, where bit (i - 1) * N + (j - 1)
+	 * stands for the site at row i, column j. It works like openAll().
+	 * @param mask the sites to open.
 	 */
-	private void checkRight(int i, int j) {
-		
-		int index = getIndex(i, j);
-		
-		if (isOpen(i, j + 1)) { // Check the site on the right of the site to be opened.
-			int root1 = uf.find(index);
-			int root2 = uf.find(index + 1);
-			uf.union(index, index + 1); // If the site on the right is also opened, connect. 
-			connectBottom[uf.find(index)] = connectBottom[root1] || connectBottom[root2];
-			connectTop[uf.find(index)] = connectTop[root1] || connectTop[root2];
+	public void openMask(BitSet mask) {
+		if (mask.length() > max - 1) {
+			throw new IndexOutOfBoundsException("The site index is out of bound!");
 		}
-	}
-	
-	private void checkBelow(int i, int j) {	// Check the site on the right of the target site.
-		int index = getIndex(i, j);
 		
-		int root1 = uf.find(index);
-		int root2 = uf.find(index + dim);
-		if (isOpen(i + 1, j)) { // Check the site below the site to be opened.
-			uf.union(index, index + dim);	// connect.
-			connectBottom[uf.find(index)] = connectBottom[root1] || connectBottom[root2];
-			connectTop[uf.find(index)] = connectTop[root1] || connectTop[root2];
+		for (int b = mask.nextSetBit(0); b >= 0; b = mask.nextSetBit(b + 1)) {
+			mark(b + 1, b / dim + 1);
+		}
+		for (int b = mask.nextSetBit(0); b >= 0; b = mask.nextSetBit(b + 1)) {
+			if ((state[b + 1] & ADDED) != 0) connectAdded(b + 1);
 		}
 	}
 	
-	private void checkLeft(int i, int j) {	// Check the left site of the target site.
-		int index = getIndex(i, j);
+	/**
+	 * This method marks a site open without connecting it, for the bulk open methods. The site
+	 * also gets the ADDED bit until connectAdded() has processed it.
+	 * @param index index of the site.
+	 * @param i row index of the site.
+	 * @return true if the site was blocked before.
+	 */
+	private boolean mark(int index, int i) {
+		if ((state[index] & OPEN) != 0) return false;	// The site is already opened.
 		
-		int root1 = uf.find(index);
-		int root2 = uf.find(index- 1);
-		if (isOpen(i, j - 1)) { // Check the site on the left of the site to be opened.
-			uf.union(index, index - 1);	// If the site on the left is open, connect.
-			connectBottom[uf.find(index)] = connectBottom[root1] || connectBottom[root2];
-			connectTop[uf.find(index)] = connectTop[root1] || connectTop[root2];
-		}
+		markOpen(index, i);
+		state[index] |= ADDED;
+		return true;
 	}
 	
-	private void checkAbove(int i, int j) {
-		int index = getIndex(i, j);
-		
-		int root1 = uf.find(index);
-		int root2 = uf.find(index- dim);
-		if (isOpen(i - 1, j)) { // Check the site above the site to be opened.
-			uf.union(index, index - dim);	// If the site above is open, connect.
-			connectBottom[uf.find(index)] = connectBottom[root1] || connectBottom[root2];
-			connectTop[uf.find(index)] = connectTop[root1] || connectTop[root2];
-		}
+	/**
+	 * This method connects a site marked by mark() to its open neighbors. Neighbors that still
+	 * carry the ADDED bit are skipped by connect(), since they link back when their own turn
+	 * comes, so every pair of neighbors is linked once.
+	 * @param index index of the site.
+	 */
+	private void connectAdded(int index) {
+		state[index] &= ~ADDED;
+		connectNeighbors(index, (index - 1) / dim + 1, (index - 1) % dim + 1);
 	}
-
 	
 
 	/**
@@ -271,7 +447,7 @@ public class Percolation {
 		validateIndex(i, j);
 		
 		int index = getIndex(i, j);	// Index of the site in the UF class.
-		return openStatus[index];
+		return (state[index] & OPEN) != 0;
 	}
 	
 	
@@ -286,11 +462,158 @@ public class Percolation {
 		validateIndex(i, j);
 		
 		int index = getIndex(i, j);	// Index of the site in the UF class.
-		return connectTop[uf.find(index)];
+		return (state[find(index)] & TOP) != 0;
 		
 	}
 	
+	/**
+	 * These methods copy the fullness or open status of whole rows into a caller-supplied buffer
+	 * in one pass, instead of one isFull() or isOpen() call per site. Rows fromRow to toRow
+	 * (both inclusive) are copied, so a renderer can pull just the band it shows; the no-range
+	 * versions copy the whole grid. In a long[] bitmap the site at row i, column j is bit
+	 * (i - fromRow) * N + (j - 1); in a byte[] it is element (i - fromRow) * N + (j - 1), set to 1
+	 * or 0. The buffer is overwritten up to the last site of the band.
+	 * 
+	 * Fullness is memoized along the way: two adjacent open sites are always in the same
+	 * component, so an open site copies the fullness of its open left or upper neighbor, and a
+	 * find() is only needed where neither is open.
+	 */
+	public void fullMask(long[] bits) {
+		fullMask(1, dim, bits);
+	}
+	
+	public void fullMask(int fromRow, int toRow, long[] bits) {
+		validateRows(fromRow, toRow);
+		int first = getIndex(fromRow, 1);
+		int count = (toRow - fromRow + 1) * dim;
+		checkCapacity(bits.length * 64L, count);
+		
+		Arrays.fill(bits, 0, (count + 63) / 64, 0L);
+		for (int k = 0; k < count; k++) {
+			boolean left = k > 0 && (bits[(k - 1) >>> 6] & (1L << (k - 1))) != 0;
+			boolean up = k >= dim && (bits[(k - dim) >>> 6] & (1L << (k - dim))) != 0;
+			if (full(first + k, k, left, up)) bits[k >>> 6] |= 1L << k;
+		}
+	}
+	
+	public void fullMask(byte[] buffer) {
+		fullMask(1, dim, buffer);
+	}
+	
+	public void fullMask(int fromRow, int toRow, byte[] buffer) {
+		validateRows(fromRow, toRow);
+		int first = getIndex(fromRow, 1);
+		int count = (toRow - fromRow + 1) * dim;
+		checkCapacity(buffer.length, count);
+		
+		for (int k = 0; k < count; k++) {
+			boolean left = k > 0 && buffer[k - 1] != 0;
+			boolean up = k >= dim && buffer[k - dim] != 0;
+			buffer[k] = (byte) (full(first + k, k, left, up) ? 1 : 0);
+		}
+	}
+	
+	public void openStatusMask(long[] bits) {
+		openStatusMask(1, dim, bits);
+	}
+	
+	public void openStatusMask(int fromRow, int toRow, long[] bits) {
+		validateRows(fromRow, toRow);
+		int first = getIndex(fromRow, 1);
+		int count = (toRow - fromRow + 1) * dim;
+		checkCapacity(bits.length * 64L, count);
+		
+		Arrays.fill(bits, 0, (count + 63) / 64, 0L);
+		for (int k = 0; k < count; k++) {
+			if ((state[first + k] & OPEN) != 0) bits[k >>> 6] |= 1L << k;
+		}
+	}
+	
+	public void openStatusMask(byte[] buffer) {
+		openStatusMask(1, dim, buffer);
+	}
+	
+	public void openStatusMask(int fromRow, int toRow, byte[] buffer) {
+		validateRows(fromRow, toRow);
+		int first = getIndex(fromRow, 1);
+		int count = (toRow - fromRow + 1) * dim;
+		checkCapacity(buffer.length, count);
+		
+		for (int k = 0; k < count; k++) {
+			buffer[k] = (byte) (state[first + k] & OPEN);	// OPEN is 1.
+		}
+	}
 	
+	/**
+	 * This method tells whether the site at index is full, given the fullness of the sites to
+	 * its left and above it, with the memoization described at fullMask().
+	 * @param index index of the site.
+	 * @param k position of the site in the band, 0 for the first site of the first row.
+	 * @param left whether the site to the left is full (ignored in the first column).
+	 * @param up whether the site above is full (ignored in the first row of the band).
+	 */
+	private boolean full(int index, int k, boolean left, boolean up) {
+		if ((state[index] & OPEN) == 0) return false;	// Blocked sites are never full.
+		if (k % dim != 0 && (state[index - 1] & OPEN) != 0) return left;
+		if (k >= dim && (state[index - dim] & OPEN) != 0) return up;
+		return (state[find(index)] & TOP) != 0;
+	}
+	
+	/**
+	 * This method checks that fromRow to toRow is a valid, non-empty range of rows.
+	 */
+	private void validateRows(int fromRow, int toRow) {
+		if (fromRow < 1 || toRow > dim || fromRow > toRow) {
+			throw new IndexOutOfBoundsException("The row range is out of bound!");
+		}
+	}
+	
+	/**
+	 * This method checks that a buffer of the given capacity can hold the given number of sites.
+	 */
+	private static void checkCapacity(long capacity, int sites) {
+		if (capacity < sites) {
+			throw new IllegalArgumentException("The buffer is too small for " + sites + " sites!");
+		}
+	}
+	
+	/**
+	 * This method returns the number of sites in the open cluster containing the site at
+	 * (row i, column j), or 0 if the site is blocked.
+	 * @param i row index for the site.
+	 * @param j col index for the site.
+	 * @return the size of the cluster of the site, 0 for a blocked site.
+	 */
+	public int clusterSize(int i, int j) {
+		
+		validateIndex(i, j);
+		
+		int index = getIndex(i, j);
+		if ((state[index] & OPEN) == 0) return 0;
+		return -parent[find(index)];	// Roots store their negated size.
+	}
+	
+	
+	
+	/**
+	 * These methods return cluster statistics of the current state. They are kept up to date by
+	 * open() and union() as they go, so each call is O(1).
+	 * numberOfOpenSites(): the number of open sites.
+	 * numberOfClusters(): the number of clusters (components) of open sites.
+	 * largestCluster(): the number of sites in the largest cluster.
+	 * topClusterSize(): the number of sites in the largest cluster connected to the top row.
+	 * numberOfFullSites(): the number of full sites, summed over all top-connected clusters.
+	 */
+	public int numberOfOpenSites() { return openSites; }
+	public int numberOfClusters() { return clusters; }
+	public int largestCluster() { return largest; }
+	public int topClusterSize() { return topLargest; }
+	public int numberOfFullSites() { return fullSites; }
+	
+	/**
+	 * This method returns the boundary conditions the grid was built with.
+	 */
+	public Boundary boundary() { return boundary; }
 	
 	/**
 	 * This method tells whether the system percolates. It returns true if yes, false otherwise.
@@ -300,6 +623,166 @@ public class Percolation {
 		return isPercolate;
 	}
 	
+	/**
+	 * These methods save the grid to a compact binary snapshot and restore it, so a long
+	 * simulation can be checkpointed without replaying every open() call. The layout is
+	 * big-endian and has no variable-length fields:
+	 * 
+	 *     int magic "PERC", int version, int N, byte boundary, byte percolates,
+	 *     int openSites, clusters, largest, topLargest, fullSites,
+	 *     three bit planes of N*N bits each: OPEN, TOP and BOTTOM, with site (i, j) at bit
+	 *         (i - 1) * N + (j - 1), bit b in the low bits of byte b / 8,
+	 *     then for every open site in row-major order its parent link (int), followed on
+	 *         PERIODIC_BOTH by its row offset from the root (int).
+	 * 
+	 * Before writing, every path is compressed so each open site links straight to its root;
+	 * this does not change any result, and the restored grid starts with paths of length one.
+	 * A 10,000 x 10,000 grid takes 37.5 MB of planes plus 4 bytes per open site, and readFrom()
+	 * rebuilds it in one sequential read, without running any union. The stream or channel is
+	 * not closed, and readFrom() does not read past the end of the snapshot.
+	 * 
+	 * readFrom() does not trust N before the bit planes are there: from a channel the bytes left
+	 * are checked first, and from a stream the planes are read into a buffer that only grows
+	 * with the bytes actually read. So a truncated or corrupt snapshot fails with an IOException
+	 * before the grid is allocated, instead of allocating 5 bytes per claimed site.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		for (int k = 1; k < max; k++) {		// Link every open site straight to its root.
+			if ((state[k] & OPEN) == 0 || parent[k] < 0) continue;
+			int root = find(k);
+			if (offsets != null) offsets[k] = lastOffset;
+			parent[k] = root;
+		}
+		
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(dim);
+		data.writeByte(boundary.ordinal());
+		data.writeBoolean(isPercolate);
+		data.writeInt(openSites);
+		data.writeInt(clusters);
+		data.writeInt(largest);
+		data.writeInt(topLargest);
+		data.writeInt(fullSites);
+		
+		for (byte flag : new byte[] {OPEN, TOP, BOTTOM}) {
+			int bits = 0;
+			for (int k = 1; k < max; k++) {
+				if ((state[k] & flag) != 0) bits |= 1 << ((k - 1) & 7);
+				if ((k & 7) == 0 || k == max - 1) {		// A full byte, or the last one.
+					data.writeByte(bits);
+					bits = 0;
+				}
+			}
+		}
+		
+		for (int k = 1; k < max; k++) {
+			if ((state[k] & OPEN) == 0) continue;
+			data.writeInt(parent[k]);
+			if (offsets != null) data.writeInt(offsets[k]);
+		}
+		data.flush();
+	}
+	
+	public void writeTo(FileChannel channel) throws IOException {
+		writeTo(Channels.newOutputStream(channel));
+	}
+	
+	public static Percolation readFrom(InputStream in) throws IOException {
+		return readFrom(in, Long.MAX_VALUE);
+	}
+	
+	public static Percolation readFrom(FileChannel channel) throws IOException {
+		return readFrom(Channels.newInputStream(channel), channel.size() - channel.position());
+	}
+	
+	/**
+	 * This method restores a snapshot from in, which holds at most available more bytes, or an
+	 * unknown number if available is Long.MAX_VALUE.
+	 */
+	private static Percolation readFrom(InputStream in, long available) throws IOException {
+		DataInputStream data = new DataInputStream(in);		// Only exact-length reads follow.
+		if (data.readInt() != MAGIC) {
+			throw new IOException("The input is not a Percolation snapshot!");
+		}
+		if (data.readInt() != VERSION) {
+			throw new IOException("Unsupported Percolation snapshot version!");
+		}
+		int N = data.readInt();
+		int mode = data.readByte();
+		if (N <= 0 || N > 46340 || mode < 0 || mode >= Boundary.values().length) {
+			throw new IOException("The Percolation snapshot header is corrupt!");
+		}
+		boolean isPercolate = data.readBoolean();
+		int[] counters = new int[5];
+		for (int c = 0; c < counters.length; c++) {
+			counters[c] = data.readInt();
+		}
+		
+		int sites = N * N;
+		int planeBytes = (sites + 7) / 8;
+		if (available - HEADER < 3L * planeBytes) {
+			throw new IOException("The Percolation snapshot is truncated!");
+		}
+		byte[] planes = new byte[Math.min(3 * planeBytes, 1 << 16)];
+		int read = 0;
+		while (read < 3 * planeBytes) {		// Grow only as the data comes in.
+			if (read == planes.length) {
+				planes = Arrays.copyOf(planes, (int) Math.min(3L * planeBytes, 2L * read));
+			}
+			data.readFully(planes, read, planes.length - read);
+			read = planes.length;
+		}
+		
+		Percolation perco = new Percolation(N, Boundary.values()[mode]);
+		perco.isPercolate = isPercolate;
+		perco.openSites = counters[0];
+		perco.clusters = counters[1];
+		perco.largest = counters[2];
+		perco.topLargest = counters[3];
+		perco.fullSites = counters[4];
+		
+		byte[] flags = {OPEN, TOP, BOTTOM};
+		for (int f = 0; f < flags.length; f++) {
+			int plane = f * planeBytes;
+			for (int k = 1; k <= sites; k++) {
+				if ((planes[plane + ((k - 1) >>> 3)] & (1 << ((k - 1) & 7))) != 0) {
+					perco.state[k] |= flags[f];
+				}
+			}
+		}
+		planes = null;		// Only the links are left to read.
+		
+		int record = perco.offsets == null ? 4 : 8;		// Bytes per open site.
+		long remaining = 0;
+		for (int k = 1; k <= sites; k++) {
+			if ((perco.state[k] & OPEN) != 0) remaining += record;
+		}
+		
+		byte[] chunk = new byte[1 << 16];	// A multiple of record, so no record is split.
+		ByteBuffer buffer = ByteBuffer.wrap(chunk);
+		int length = 0;
+		int position = 0;
+		for (int k = 1; k <= sites; k++) {
+			if ((perco.state[k] & OPEN) == 0) continue;
+			if (position == length) {
+				length = (int) Math.min(chunk.length, remaining);
+				data.readFully(chunk, 0, length);
+				remaining -= length;
+				position = 0;
+			}
+			int link = buffer.getInt(position);
+			if (link == 0 || link > sites || link < -sites) {
+				throw new IOException("The Percolation snapshot has a corrupt parent link!");
+			}
+			perco.parent[k] = link;
+			if (perco.offsets != null) perco.offsets[k] = buffer.getInt(position + 4);
+			position += record;
+		}
+		return perco;
+	}
+	
 	
 	public static void main(String[] args) {
 		
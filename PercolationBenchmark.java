@@ -0,0 +1,234 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.SplittableRandom;
+
+/**
+ * This class is the performance harness for Percolation and the experiments of PercolationStats.
+ * For every grid size and opening order it reports, as mean +- 95% half-width over the measured
+ * rounds:
+ *
+ *     open      nanoseconds per open() while all sites of the order are opened,
+ *     isFull    nanoseconds per isFull() on random sites of a grid opened up to about p = 0.593
+ *               (the threshold) for RANDOM, or along the whole path for SNAKE,
+ *     trial     milliseconds per experiment from reset() to percolation, with the same
+ *               PercolationTrial that PercolationStats uses for RANDOM,
+ *     alloc     bytes allocated per experiment on a reused grid, which should stay near zero.
+ *
+ * For RANDOM a third row, "fresh", runs the same experiments with a new PercolationTrial, and so
+ * a new grid and site buffer, for every experiment, as PercolationStats did before it kept one
+ * grid per thread; its trial and alloc columns show what reusing the grid saves.
+ *
+ * RANDOM opens the sites in the order of a random permutation, as the experiments do. SNAKE is
+ * the adversarial order: it opens a single serpentine path, row 1 left to right, one site down
+ * at the right edge, row 3 right to left, one site down at the left edge and so on, so one long
+ * thin cluster absorbs every new site and the grid only percolates at the end of the path.
+ *
+ * Each measurement is preceded by WARMUP unmeasured rounds so the JIT has compiled the hot path.
+ * Large grids need a large heap: N = 8192 takes about 600 MB, so run with e.g. -Xmx2g.
+ */
+public class PercolationBenchmark {
+
+	/**
+	 * The opening orders: a random permutation of all sites, or the serpentine path.
+	 */
+	public enum Order { RANDOM, SNAKE }
+
+	private static final int WARMUP = 2;	// Unmeasured rounds before each measurement.
+	private static final int ROUNDS = 5;	// Measured rounds.
+	private static final int QUERIES = 1 << 20;	// isFull() calls per round.
+	private static final double THRESHOLD = 0.592746;	// Site threshold of the square lattice.
+
+	private static long sink;	// Results are folded in here so the JIT cannot drop the work.
+
+	/**
+	 * This method returns the sites of an order as site numbers (i - 1) * N + (j - 1).
+	 * @param N the grid dimension
+	 * @param order the opening order
+	 * @param seed the seed of the permutation, for RANDOM
+	 */
+	static int[] sites(int N, Order order, long seed) {
+		if (order == Order.RANDOM) {
+			int[] sites = new int[N * N];
+			SplittableRandom random = new SplittableRandom(seed);
+			for (int k = 0; k < sites.length; k++) {
+				int pick = random.nextInt(k + 1);	// Inside-out Fisher-Yates.
+				sites[k] = sites[pick];
+				sites[pick] = k;
+			}
+			return sites;
+		}
+
+		int[] path = new int[N * ((N + 1) / 2) + N / 2];
+		int length = 0;
+		for (int row = 0; row < N; row++) {
+			boolean rightward = row % 4 == 0;
+			if (row % 2 == 0) {		// A full row.
+				for (int c = 0; c < N; c++) {
+					path[length++] = row * N + (rightward ? c : N - 1 - c);
+				}
+			}
+			else {		// One site down, at the edge where the row above ended.
+				path[length++] = row * N + (row % 4 == 1 ? N - 1 : 0);
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * This method measures open() over all sites of the order.
+	 * @return the nanoseconds per open() of every measured round
+	 */
+	static RunningStats open(int N, int[] sites) {
+		Percolation perco = new Percolation(N);
+		RunningStats stats = new RunningStats();
+		for (int round = 0; round < WARMUP + ROUNDS; round++) {
+			perco.reset();
+			long start = System.nanoTime();
+			for (int site : sites) {
+				perco.open(site / N + 1, site % N + 1);
+			}
+			long time = System.nanoTime() - start;
+			sink += perco.numberOfClusters();
+			if (round >= WARMUP) stats.add((double) time / sites.length);
+		}
+		return stats;
+	}
+
+	/**
+	 * This method measures isFull() on random sites after the first count sites of the order are
+	 * opened.
+	 * @return the nanoseconds per isFull() of every measured round
+	 */
+	static RunningStats isFull(int N, int[] sites, int count, long seed) {
+		Percolation perco = new Percolation(N);
+		for (int k = 0; k < count; k++) {
+			perco.open(sites[k] / N + 1, sites[k] % N + 1);
+		}
+
+		int[] rows = new int[QUERIES];
+		int[] cols = new int[QUERIES];
+		SplittableRandom random = new SplittableRandom(seed);
+		for (int q = 0; q < QUERIES; q++) {
+			rows[q] = random.nextInt(N) + 1;
+			cols[q] = random.nextInt(N) + 1;
+		}
+
+		RunningStats stats = new RunningStats();
+		for (int round = 0; round < WARMUP + ROUNDS; round++) {
+			int full = 0;
+			long start = System.nanoTime();
+			for (int q = 0; q < QUERIES; q++) {
+				if (perco.isFull(rows[q], cols[q])) full++;
+			}
+			long time = System.nanoTime() - start;
+			sink += full;
+			if (round >= WARMUP) stats.add((double) time / QUERIES);
+		}
+		return stats;
+	}
+
+	/**
+	 * This method measures whole experiments, from reset() until the grid percolates. RANDOM
+	 * runs PercolationTrial with a new seed each round; SNAKE opens the path until it percolates.
+	 * @param fresh for RANDOM, build a new PercolationTrial inside every measured experiment
+	 *        instead of reusing one
+	 * @param time receives the milliseconds per experiment of every measured round
+	 * @param alloc receives the bytes allocated per experiment, if the JVM can count them
+	 */
+	static void trial(int N, Order order, int[] path, long seed, boolean fresh, RunningStats time,
+			RunningStats alloc) {
+		PercolationTrial trial = order == Order.RANDOM ? new PercolationTrial(N) : null;
+		Percolation perco = order == Order.SNAKE ? new Percolation(N) : null;
+
+		for (int round = 0; round < WARMUP + ROUNDS; round++) {
+			long probe = allocatedBytes();
+			long bytes = allocatedBytes();
+			probe = bytes - probe;		// What allocatedBytes() allocates itself.
+			long start = System.nanoTime();
+			if (trial != null) {
+				if (fresh) trial = new PercolationTrial(N);
+				sink += (long) (trial.run(PercolationTrial.seed(seed, round)) * N);
+			}
+			else {
+				perco.reset();
+				int k = 0;
+				while (!perco.percolates()) {
+					perco.open(path[k] / N + 1, path[k] % N + 1);
+					k++;
+				}
+				sink += k;
+			}
+			long elapsed = System.nanoTime() - start;
+			bytes = allocatedBytes() - bytes - probe;
+
+			if (round >= WARMUP) {
+				time.add(elapsed / 1e6);
+				if (allocatedBytes() >= 0) alloc.add(bytes);
+			}
+		}
+	}
+
+	/**
+	 * This method returns the bytes allocated by the current thread so far, or a negative number
+	 * if the JVM does not count them.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+				Thread.currentThread().getId());
+	}
+
+	/**
+	 * This method formats a measurement as mean +- half-width.
+	 */
+	private static String format(RunningStats stats) {
+		if (stats.count() == 0) return "n/a";
+		double half = stats.count() < 2 ? 0.0 : stats.halfWidth();
+		return String.format("%.3f +- %.3f", stats.mean(), half);
+	}
+
+	/**
+	 * Usage: java -Xmx2g PercolationBenchmark [N ...]
+	 * The sizes default to 64, 512, 2048 and 8192.
+	 */
+	public static void main(String[] args) {
+		int[] sizes = {64, 512, 2048, 8192};
+		if (args.length > 0) {
+			sizes = new int[args.length];
+			for (int a = 0; a < args.length; a++) {
+				sizes[a] = Integer.parseInt(args[a]);
+			}
+		}
+		long seed = 20160901L;	// Fixed, so runs compare the same work.
+
+		System.out.printf("%6s %-6s %22s %22s %22s %22s%n", "N", "order", "open (ns)",
+				"isFull (ns)", "trial (ms)", "alloc/trial (B)");
+		for (int N : sizes) {
+			for (Order order : Order.values()) {
+				int[] sites = sites(N, order, seed);
+				int opened = order == Order.RANDOM ? (int) (THRESHOLD * sites.length)
+						: sites.length;
+
+				RunningStats open = open(N, sites);
+				RunningStats isFull = isFull(N, sites, opened, seed);
+				RunningStats time = new RunningStats();
+				RunningStats alloc = new RunningStats();
+				trial(N, order, sites, seed, false, time, alloc);
+
+				System.out.printf("%6d %-6s %22s %22s %22s %22s%n", N, order, format(open),
+						format(isFull), format(time), format(alloc));
+
+				if (order == Order.RANDOM) {	// The same experiments on a new grid each.
+					RunningStats freshTime = new RunningStats();
+					RunningStats freshAlloc = new RunningStats();
+					trial(N, order, sites, seed, true, freshTime, freshAlloc);
+					System.out.printf("%6d %-6s %22s %22s %22s %22s%n", N, "fresh", "", "",
+							format(freshTime), format(freshAlloc));
+				}
+			}
+		}
+		if (sink == 42) System.out.println();	// Keeps sink alive.
+	}
+
+}
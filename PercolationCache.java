@@ -0,0 +1,190 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class is a persistent cache of PercolationStats results in a local directory, bounded in
+ * size. A run is identified by (N, boundary, seed) and not by T: the cache keeps the thresholds
+ * of its first experiments, and since the seed of experiment k is PercolationTrial.seed(seed, k),
+ * the statistics for any T up to that count are the first T of them, replayed in order. Asking
+ * for more experiments than are cached tops the entry up: only the missing experiments are run
+ * and appended. The results are always exactly those of new PercolationStats(N, T, seed).
+ *
+ * The store is content-addressed: the file of a run is named after the SHA-256 hash of its
+ * identity, so any process using the same directory finds it, and is written as a ThresholdFile,
+ * atomically, every few seconds while experiments run and once when they are done (see
+ * ThresholdFile.INTERVAL). Its modification time is the time of last use. When the files of the
+ * directory exceed the size bound, the least recently used ones are deleted, never the one just
+ * used. A file that cannot be read or belongs to another run (a hash collision) is a cache miss
+ * and is overwritten. Temporary files that a process left behind when it died while writing an
+ * entry are deleted once they are older than an hour.
+ */
+public class PercolationCache {
+
+	private static final String SUFFIX = ".pthr";	// The ending of the cache files.
+	private static final long STALE = 60 * 60 * 1000L;	// Age in milliseconds after which a
+														// temporary file is left over from a
+														// crash, not being written.
+
+	private final File directory;	// The cache directory.
+	private final long maxBytes;	// The size bound of the cache files together.
+
+	/**
+	 * Construct a cache in the given directory, which is created if needed.
+	 * @param directory the cache directory.
+	 * @param maxBytes the most bytes the cache files may take together.
+	 */
+	public PercolationCache(File directory, long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("The size bound must be positive!");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create the cache directory " + directory);
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * This method returns the statistics of T experiments on an N-by-N grid, from the cache when
+	 * it holds them, running only the experiments it does not hold.
+	 * @param N N-by-N grid, the grid dimension is N.
+	 * @param T the number of experiments.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 * @param boundary the boundary conditions of the grid.
+	 * @param threads the number of threads for the missing experiments.
+	 * @return the statistics, equal to those of new PercolationStats(N, T, seed) for OPEN.
+	 */
+	public synchronized PercolationStats stats(int N, int T, long seed,
+			Percolation.Boundary boundary, int threads) {
+		if (N <= 0 || T <= 0 || threads <= 0 || boundary == null) {
+			throw new IllegalArgumentException();
+		}
+
+		File file = new File(directory, key(N, boundary, seed) + SUFFIX);
+		ThresholdFile cached = null;
+		if (file.exists()) {
+			try {
+				cached = ThresholdFile.read(file);
+				if (!cached.matches(N, boundary, seed, 0, cached.to, cached.to)
+						|| cached.threshold == null) {
+					cached = null;
+				}
+			}
+			catch (IOException e) {
+				cached = null;		// A damaged file is a miss.
+			}
+		}
+
+		ThresholdFile run = cached;
+		if (cached == null || cached.count < T) {
+			run = new ThresholdFile(N, boundary, seed, 0, T, T, true);
+			if (cached != null) {		// Top up: keep the cached experiments.
+				System.arraycopy(cached.threshold, 0, run.threshold, 0, cached.count);
+				run.stats = cached.stats;
+				run.count = cached.count;
+			}
+
+			ExecutorService executor = threads == 1 ? null
+					: Executors.newFixedThreadPool(threads);
+			try {
+				run.run(file, ThresholdFile.INTERVAL, executor, threads);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Cannot write the cache file " + file, e);
+			}
+			finally {
+				if (executor != null) executor.shutdownNow();
+			}
+		}
+		file.setLastModified(System.currentTimeMillis());	// Mark it as recently used.
+		evict(file);
+
+		if (run.count == T) return new PercolationStats(run.stats);
+		RunningStats stats = new RunningStats();
+		for (int k = 0; k < T; k++) {
+			stats.add(run.threshold[k]);	// The first T, in experiment order.
+		}
+		return new PercolationStats(stats);
+	}
+
+	/**
+	 * This method returns the content address of a run: the SHA-256 hash, in hexadecimal, of a
+	 * text that names the run.
+	 */
+	static String key(int N, Percolation.Boundary boundary, long seed) {
+		String identity = "PercolationStats thresholds; N=" + N + "; boundary=" + boundary
+				+ "; seed=" + seed;
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest(
+					identity.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : hash) {
+				hex.append(String.format("%02x", b & 0xff));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);	// Every JVM has it.
+		}
+	}
+
+	/**
+	 * This method deletes the temporary files of crashed writers, then the least recently used
+	 * cache files, but never keep, until the files take at most maxBytes together.
+	 */
+	private void evict(File keep) {
+		File[] files = directory.listFiles();
+		if (files == null) return;
+
+		long now = System.currentTimeMillis();
+		long total = 0;
+		for (File f : files) {
+			String name = f.getName();
+			if (name.endsWith(SUFFIX)) total += f.length();
+			else if (name.contains(SUFFIX) && name.endsWith(".tmp")
+					&& now - f.lastModified() > STALE) {
+				f.delete();		// A younger one may still be written, see ThresholdFile.
+			}
+		}
+		while (total > maxBytes) {
+			File oldest = null;
+			for (File f : files) {
+				if (f == null || !f.getName().endsWith(SUFFIX) || f.equals(keep)) continue;
+				if (oldest == null || f.lastModified() < oldest.lastModified()) oldest = f;
+			}
+			if (oldest == null) return;		// Only the file just used is left.
+
+			total -= oldest.length();
+			oldest.delete();
+			for (int f = 0; f < files.length; f++) {
+				if (oldest.equals(files[f])) files[f] = null;
+			}
+		}
+	}
+
+	/**
+	 * Usage: java PercolationCache directory maxMB N T seed [boundary] [threads]
+	 */
+	public static void main(String[] args) {
+		PercolationCache cache = new PercolationCache(new File(args[0]),
+				Long.parseLong(args[1]) << 20);
+		Percolation.Boundary boundary = args.length > 5
+				? Percolation.Boundary.valueOf(args[5].toUpperCase()) : Percolation.Boundary.OPEN;
+		int threads = args.length > 6 ? Integer.parseInt(args[6])
+				: Runtime.getRuntime().availableProcessors();
+
+		PercolationStats stats = cache.stats(Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+				Long.parseLong(args[4]), boundary, threads);
+
+		System.out.println(stats.confidenceLo());
+		System.out.println(stats.confidenceHi());
+		System.out.println(stats.mean());
+		System.out.println(stats.stddev());
+	}
+
+}
@@ -0,0 +1,171 @@
+import java.util.SplittableRandom;
+
+/**
+ * This class computes the whole percolation curve of an N-by-N grid with the Newman-Ziff method.
+ * Instead of running separate experiments for every density p, each of the T experiments opens
+ * all N*N sites of one random permutation through Percolation and records, for every number n of
+ * open sites, whether the grid percolates and how large the largest cluster is. Averaged over the
+ * experiments this gives the values Q(n) for a fixed number of open sites, and the value for a
+ * density p follows by weighting Q(n) with the binomial distribution of n:
+ *
+ *     Q(p) = sum over n of C(M, n) p^n (1 - p)^(M - n) Q(n),   M = N * N.
+ *
+ * Each experiment is one O(N^2) pass, and a query for any p costs O(M).
+ */
+public class PercolationCurve {
+
+	private final int sites;	// The number of sites, N * N.
+	private final int trials;	// The number of experiments.
+	private final double[] spanning;	// spanning[n]: fraction of experiments that percolate
+										// with n open sites.
+	private final double[] largest;	// largest[n]: mean fraction of sites in the largest cluster
+									// with n open sites.
+
+	/**
+	 * This method performs T Newman-Ziff experiments on an N-by-N grid.
+	 * @param N N-by-N grid, the grid dimension is N.
+	 * @param T the number of experiments the method conducts.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 */
+	public PercolationCurve(int N, int T, long seed) {
+		if (N <= 0 || T <= 0) {
+			throw new IllegalArgumentException();
+		}
+
+		sites = N * N;
+		trials = T;
+		spanning = new double[sites + 1];
+		largest = new double[sites + 1];
+
+		int[] firstSpan = new int[sites + 1];	// firstSpan[n]: experiments that first percolate
+												// when site n is opened.
+		Percolation perco = new Percolation(N);
+		int[] order = new int[sites];
+
+		for (int t = 0; t < T; t++) {
+			SplittableRandom random = new SplittableRandom(PercolationTrial.seed(seed, t));
+			perco.reset();
+			for (int k = 0; k < sites; k++) {
+				order[k] = k;
+			}
+
+			boolean spans = false;
+			for (int n = 1; n <= sites; n++) {
+				int pick = n - 1 + random.nextInt(sites - n + 1);	// Fisher-Yates step.
+				int site = order[pick];
+				order[pick] = order[n - 1];
+				order[n - 1] = site;
+
+				int row = site / N + 1;
+				int col = site % N + 1;
+				perco.open(row, col);
+
+				largest[n] += perco.largestCluster();
+				if (!spans && perco.percolates()) {
+					spans = true;
+					firstSpan[n]++;
+				}
+			}
+		}
+
+		int spanned = 0;	// Experiments that percolate with n open sites.
+		for (int n = 0; n <= sites; n++) {
+			spanned += firstSpan[n];
+			spanning[n] = (double) spanned / T;
+			largest[n] = largest[n] / T / sites;
+		}
+	}
+
+	/**
+	 * This method returns the fraction of experiments that percolate with exactly n open sites.
+	 * @param n the number of open sites, from 0 to N*N.
+	 */
+	public double spanningProbabilityAt(int n) {
+		return spanning[n];
+	}
+
+	/**
+	 * This method returns the mean fraction of all sites in the largest cluster with exactly n
+	 * open sites.
+	 * @param n the number of open sites, from 0 to N*N.
+	 */
+	public double largestClusterAt(int n) {
+		return largest[n];
+	}
+
+	/**
+	 * This method returns the estimated probability that the grid percolates when every site is
+	 * open with probability p.
+	 * @param p the site vacancy probability, between 0 and 1.
+	 */
+	public double spanningProbability(double p) {
+		return convolve(spanning, p);
+	}
+
+	/**
+	 * This method returns the estimated mean fraction of sites in the largest cluster when every
+	 * site is open with probability p.
+	 * @param p the site vacancy probability, between 0 and 1.
+	 */
+	public double largestClusterFraction(double p) {
+		return convolve(largest, p);
+	}
+
+	/**
+	 * This method returns the number of experiments the curve is averaged over.
+	 */
+	public int trials() {
+		return trials;
+	}
+
+	/**
+	 * This method weights q[n] with the Binomial(M, p) probability of n. The weights are built
+	 * outwards from the mode with the ratio of neighboring terms, which avoids the huge
+	 * binomial coefficients, and terms below 1e-16 of the mode are dropped.
+	 * @param q values for n = 0 .. M
+	 * @param p the site vacancy probability
+	 * @return the binomial average of q
+	 */
+	private double convolve(double[] q, double p) {
+		if (p < 0.0 || p > 1.0) {
+			throw new IllegalArgumentException("p must be between 0 and 1!");
+		}
+		if (p == 0.0) return q[0];
+		if (p == 1.0) return q[sites];
+
+		int mode = (int) Math.min(sites, Math.floor((sites + 1) * p));
+		double ratio = p / (1.0 - p);
+
+		double weight = 1.0;
+		double total = 1.0;
+		double sum = q[mode];
+		for (int n = mode; n < sites && weight > 1e-16; n++) {	// Upwards from the mode.
+			weight = weight * (sites - n) / (n + 1) * ratio;
+			total += weight;
+			sum += weight * q[n + 1];
+		}
+
+		weight = 1.0;
+		for (int n = mode; n > 0 && weight > 1e-16; n--) {		// Downwards from the mode.
+			weight = weight * n / (sites - n + 1) / ratio;
+			total += weight;
+			sum += weight * q[n - 1];
+		}
+
+		return sum / total;
+	}
+
+
+	public static void main(String[] args) {
+		int N = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+		int T = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		PercolationCurve curve = new PercolationCurve(N, T, new SplittableRandom().nextLong());
+
+		for (double p = 0.50; p < 0.70; p += 0.01) {
+			System.out.printf("%.2f %.4f %.4f%n", p, curve.spanningProbability(p),
+					curve.largestClusterFraction(p));
+		}
+	}
+
+}
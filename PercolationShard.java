@@ -0,0 +1,160 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class spreads the T experiments of a PercolationStats run over S processes, on one host
+ * or several, without any service between them. Shard k runs experiments k*T/S to
+ * (k+1)*T/S - 1 with the seeds PercolationTrial.seed(seed, k) of the single-process run, and
+ * writes a small partial file (see ThresholdFile): T, the count, mean and sum of squared
+ * deviations of its thresholds and, optionally, the thresholds themselves. A shard that is
+ * killed resumes from its file when started again.
+ *
+ * merge() combines the files of all shards. When every file has its thresholds, they are
+ * replayed in experiment order, which gives exactly the mean, stddev and confidence interval of
+ * new PercolationStats(N, T, seed). Otherwise the partial statistics are merged pairwise, which
+ * agrees with the single-process run up to rounding.
+ */
+public class PercolationShard {
+
+	/**
+	 * This method runs shard k of S of a run and writes its partial file.
+	 * @param N N-by-N grid, the grid dimension is N.
+	 * @param T the number of experiments of the whole run.
+	 * @param seed the master seed of the whole run.
+	 * @param S the number of shards.
+	 * @param k the shard to run, from 0 to S - 1.
+	 * @param threads the number of threads to use.
+	 * @param raw whether to keep the thresholds in the file, for an exact merge.
+	 * @param file the partial file of the shard.
+	 */
+	public static void run(int N, int T, long seed, int S, int k, int threads, boolean raw,
+			File file) {
+		if (N <= 0 || T <= 0 || S <= 0 || k < 0 || k >= S || threads <= 0) {
+			throw new IllegalArgumentException();
+		}
+		int from = (int) ((long) k * T / S);
+		int to = (int) ((long) (k + 1) * T / S);
+
+		ThresholdFile shard = new ThresholdFile(N, Percolation.Boundary.OPEN, seed, from, to, T,
+				raw);
+		if (file.exists()) {
+			try {
+				shard = ThresholdFile.read(file);
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException("Cannot read the shard file " + file, e);
+			}
+			if (!shard.matches(N, Percolation.Boundary.OPEN, seed, from, to, T)) {
+				throw new IllegalArgumentException(file + " belongs to another shard!");
+			}
+		}
+
+		ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+		try {
+			shard.run(file, ThresholdFile.INTERVAL, executor, threads);
+			if (to == from) shard.write(file);		// An empty shard still leaves its file.
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write the shard file " + file, e);
+		}
+		finally {
+			if (executor != null) executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * This method merges the partial files of the shards of a run. The files must be of the same
+	 * run, complete, and cover all T experiments of the run without gaps or overlaps.
+	 * @param files the partial files, in any order.
+	 * @return the statistics of all experiments of the files.
+	 */
+	public static RunningStats merge(File... files) {
+		if (files.length == 0) {
+			throw new IllegalArgumentException("No shard files to merge!");
+		}
+
+		ThresholdFile[] shards = new ThresholdFile[files.length];
+		for (int f = 0; f < files.length; f++) {
+			try {
+				shards[f] = ThresholdFile.read(files[f]);
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException("Cannot read the shard file " + files[f], e);
+			}
+			if (!shards[f].done()) {
+				throw new IllegalArgumentException(files[f] + " is not complete!");
+			}
+		}
+
+		Arrays.sort(shards, new Comparator<ThresholdFile>() {
+			public int compare(ThresholdFile a, ThresholdFile b) {
+				return Integer.compare(a.from, b.from);
+			}
+		});
+		boolean raw = true;
+		for (int f = 0; f < shards.length; f++) {
+			if (shards[f].N != shards[0].N || shards[f].boundary != shards[0].boundary
+					|| shards[f].seed != shards[0].seed || shards[f].total != shards[0].total) {
+				throw new IllegalArgumentException("The shard files belong to different runs!");
+			}
+			if (f > 0 && shards[f].from != shards[f - 1].to) {
+				throw new IllegalArgumentException("The shard files leave a gap or overlap at "
+						+ "experiment " + Math.min(shards[f].from, shards[f - 1].to) + "!");
+			}
+			raw = raw && shards[f].threshold != null;
+		}
+		int first = shards[0].from;
+		int last = shards[shards.length - 1].to;
+		if (first != 0 || last != shards[0].total) {
+			throw new IllegalArgumentException("The shard files cover experiments " + first
+					+ " to " + (last - 1) + ", not all " + shards[0].total + " of the run!");
+		}
+
+		RunningStats stats = new RunningStats();
+		for (ThresholdFile shard : shards) {
+			if (raw) {
+				for (double x : shard.threshold) {
+					stats.add(x);		// In experiment order, as in a single process.
+				}
+			}
+			else stats.merge(shard.stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Usage:
+	 *     java PercolationShard run N T seed S k file [threads] [raw]
+	 *     java PercolationShard merge file1 file2 ...
+	 * For example, two hosts run "run 1000 200 42 2 0 s0.bin 8 raw" and
+	 * "run 1000 200 42 2 1 s1.bin 8 raw", and "merge s0.bin s1.bin" prints the statistics
+	 * of new PercolationStats(1000, 200, 42).
+	 */
+	public static void main(String[] args) {
+		if (args[0].equals("run")) {
+			int threads = args.length > 7 ? Integer.parseInt(args[7])
+					: Runtime.getRuntime().availableProcessors();
+			run(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]),
+					Integer.parseInt(args[4]), Integer.parseInt(args[5]), threads,
+					args.length > 8 && args[8].equals("raw"), new File(args[6]));
+			return;
+		}
+
+		File[] files = new File[args.length - 1];
+		for (int f = 0; f < files.length; f++) {
+			files[f] = new File(args[f + 1]);
+		}
+		RunningStats stats = merge(files);
+
+		System.out.println(stats.confidenceLo());
+		System.out.println(stats.confidenceHi());
+		System.out.println(stats.mean());
+		System.out.println(stats.stddev());
+		System.out.println(stats.count());
+	}
+
+}
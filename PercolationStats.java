@@ -1,3 +1,9 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 
 /**
  * TODO:
@@ -23,6 +29,21 @@ public class PercolationStats {
 	private double stddev;	// Sample standard deviation.
 	private double confidenceLo;	// Low endpoint of 95% confidence interval.
 	private double confidenceHi;	// High endpoint of the 95% confidence interval.
+	private int trials;		// The number of experiments the statistics are based on.
+	private double effectiveSampleSize;	// Independent experiments giving the same interval.
+	
+	/**
+	 * The sampling schemes, and effectiveSampleSize() tells how many independent experiments the
+	 * confidence interval of a scheme is worth.
+	 * INDEPENDENT: plain Monte Carlo, each experiment its own random permutation.
+	 * BOTH_AXES: each experiment opens the sites of its permutation until the grid spans both
+	 *       from top to bottom and from left to right, and yields the threshold of each axis.
+	 *       The two are equally distributed but only weakly correlated (about 0.15 to 0.26),
+	 *       and the second costs 1% to 4% more sites, so an experiment is worth about 1.6
+	 *       independent ones. The interval comes from the spread of the experiments' means and
+	 *       uses the Student t quantile.
+	 */
+	public enum Sampling { INDEPENDENT, BOTH_AXES }
 	
 	/**
 	 * This method performs T independent experiments on an N-by-N grid
@@ -30,73 +51,263 @@ public class PercolationStats {
 	 * @param T the number of experiments the method conducts.
 	 */
 	public PercolationStats(int N, int T) {
-		if (N <= 0 || T <= 0) {
+		this(N, T, new SplittableRandom().nextLong());
+	}
+	
+	/**
+	 * This method performs T independent experiments on an N-by-N grid. The experiments are
+	 * reproducible: the same seed always gives the same statistics.
+	 * @param N N-by-N grid, the grid dimension is N.
+	 * @param T the number of experiments the method conducts.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 */
+	public PercolationStats(int N, int T, long seed) {
+		this(N, T, seed, 1);
+	}
+	
+	/**
+	 * This method performs T independent experiments on an N-by-N grid, spread over the given
+	 * number of threads. The statistics are the same, bit for bit, for any number of threads.
+	 * @param N N-by-N grid, the grid dimension is N.
+	 * @param T the number of experiments the method conducts.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 * @param threads the number of threads to use.
+	 */
+	public PercolationStats(int N, int T, long seed, int threads) {
+		if (N <= 0 || T <= 0 || threads <= 0) {
 			throw new IllegalArgumentException();
 		}
 		
-		double[] threshold = new double[T];
-							// Array to store the percolation threshold for each experiment.
-							// threshold[0] for experiment 1, threshold[1] for experiment 2, etc.
+		if (threads == 1) {
+			summarize(N, T, 0.0, seed, null, 1);
+			return;
+		}
 		
-		for (int i = 0; i < T; i++) {
-			threshold[i] = experiment(N);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			summarize(N, T, 0.0, seed, executor, threads);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * This method performs T independent experiments on an N-by-N grid, running them on the
+	 * given executor with one task per thread of parallelism. The executor is not shut down.
+	 * @param N N-by-N grid, the grid dimension is N.
+	 * @param T the number of experiments the method conducts.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 * @param executor the executor that runs the experiments.
+	 * @param parallelism the number of tasks to submit to executor.
+	 */
+	public PercolationStats(int N, int T, long seed, ExecutorService executor, int parallelism) {
+		if (N <= 0 || T <= 0 || parallelism <= 0 || executor == null) {
+			throw new IllegalArgumentException();
+		}
+		summarize(N, T, 0.0, seed, executor, parallelism);
+	}
+	
+	/**
+	 * This method keeps performing experiments on an N-by-N grid until the half-width of the 95%
+	 * confidence interval drops below epsilon, or maxTrials experiments have been done. The
+	 * interval is checked after every experiment once 30 of them are done, so the result does
+	 * not depend on the number of threads; trials() tells how many experiments were used.
+	 * @param N N-by-N grid, the grid dimension is N.
+	 * @param epsilon the wanted half-width of the confidence interval.
+	 * @param maxTrials the most experiments to conduct.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 * @param threads the number of threads to use.
+	 */
+	public PercolationStats(int N, double epsilon, int maxTrials, long seed, int threads) {
+		if (N <= 0 || maxTrials <= 0 || threads <= 0 || !(epsilon > 0.0)) {
+			throw new IllegalArgumentException();
 		}
 		
-		double sum = 0.0; // The sum of all threshold values.
-		for (int i = 0; i < T; i++) {
-			sum = sum + threshold[i];
+		if (threads == 1) {
+			summarize(N, maxTrials, epsilon, seed, null, 1);
+			return;
 		}
 		
-		mean = sum / T;		// Mean of the threshold values of T times experiment.
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			summarize(N, maxTrials, epsilon, seed, executor, threads);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * This method performs T experiments on an N-by-N grid with the given sampling scheme,
+	 * spread over the given number of threads. mean() and the confidence interval are those of
+	 * the scheme's estimator, and stddev() is still the spread of single thresholds.
+	 * @param N N-by-N grid, the grid dimension is N.
+	 * @param T the number of experiments the method conducts.
+	 * @param seed the master seed.
+	 * @param sampling the sampling scheme.
+	 * @param threads the number of threads to use.
+	 */
+	public PercolationStats(int N, int T, long seed, Sampling sampling, int threads) {
+		if (N <= 0 || T <= 0 || threads <= 0 || sampling == null) {
+			throw new IllegalArgumentException();
+		}
+		
+		ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+		try {
+			if (sampling == Sampling.INDEPENDENT) summarize(N, T, 0.0, seed, executor, threads);
+			else summarize(N, T, seed, sampling, executor, threads);
+		}
+		finally {
+			if (executor != null) executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * This method performs T independent experiments on an N-by-N grid like the constructor
+	 * without a checkpoint, saving the results to the checkpoint file every few seconds and at
+	 * the end, see ThresholdFile.INTERVAL. If the file already holds results of the same run
+	 * (N, T and seed), the run resumes after the experiments it holds. Seeds are derived per
+	 * experiment, so the results saved are the whole state of the run, and a resumed run gives
+	 * exactly the statistics of an uninterrupted one. The file is left in place, complete, when
+	 * the run is done.
+	 * @param N N-by-N grid, the grid dimension is N.
+	 * @param T the number of experiments the method conducts.
+	 * @param seed the master seed, experiment k uses PercolationTrial.seed(seed, k).
+	 * @param threads the number of threads to use.
+	 * @param checkpoint the checkpoint file.
+	 */
+	public PercolationStats(int N, int T, long seed, int threads, File checkpoint) {
+		if (N <= 0 || T <= 0 || threads <= 0 || checkpoint == null) {
+			throw new IllegalArgumentException();
+		}
 		
-		double variance = 0.0; // The variance of all threshold values.
-		for (int i = 0; i < T; i++) {
-			variance = variance + (threshold[i] - mean) * (threshold[i] - mean);
+		ThresholdFile run = new ThresholdFile(N, Percolation.Boundary.OPEN, seed, 0, T, T, true);
+		if (checkpoint.exists()) {
+			try {
+				run = ThresholdFile.read(checkpoint);
+			}
+			catch (IOException e) {
+				throw new IllegalArgumentException("Cannot read the checkpoint " + checkpoint, e);
+			}
+			if (!run.matches(N, Percolation.Boundary.OPEN, seed, 0, T, T)) {
+				throw new IllegalArgumentException(checkpoint + " is a checkpoint of another run!");
+			}
 		}
-		stddev = Math.sqrt(variance / (T - 1));
-				// Standard deviation of the threshold values of T times experiment.
 		
-		confidenceLo = mean - 1.96 * stddev / Math.sqrt((double) T);
-			// Confidence interval lower value of the threshold values of T times experiment.
-		confidenceHi = mean + 1.96 * stddev / Math.sqrt((double) T);
-			// Confidence interval higher value of the threshold values of T times experiment.
+		ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+		try {
+			run.run(checkpoint, ThresholdFile.INTERVAL, executor, threads);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write the checkpoint " + checkpoint, e);
+		}
+		finally {
+			if (executor != null) executor.shutdownNow();
+		}
+		finish(run.stats);
 	}
 	
+	/**
+	 * This method wraps statistics of independent experiments computed elsewhere, e.g. by
+	 * PercolationCache.
+	 * @param stats the statistics of the thresholds.
+	 */
+	PercolationStats(RunningStats stats) {
+		finish(stats);
+	}
 	
 	/**
-	 * This method performs the experiment one time.
-	 * @return the fraction of sites that are opened when the system percolates.
+	 * This method runs the experiments and computes the statistics, stopping early as described
+	 * at PercolationTrial.runUntil() when epsilon is positive.
 	 */
-	private double experiment(int N) {
-		Percolation testPerco = new Percolation(N);	// Create a fully blocked system to start the experiment.
-		int row, col;	// row and column indices of the site.
-		int count = 0;		// The number of open sites.
-		
-		while (!testPerco.percolates()) {
-			row = (int) (Math.random() * N) + 1;
-			col = (int) (Math.random() * N) + 1;
-			if (testPerco.isOpen(row, col)) continue;
-			testPerco.open(row, col);
-			count++;
+	private void summarize(int N, int T, double epsilon, long seed, ExecutorService executor,
+			int tasks) {
+		PercolationTrial[] pool = new PercolationTrial[executor == null ? 1 : tasks];
+		for (int t = 0; t < pool.length; t++) {
+			pool[t] = new PercolationTrial(N);	// One grid per task for all batches.
 		}
+		finish(PercolationTrial.runUntil(N, seed, T, epsilon, executor, tasks, pool));
+	}
+	
+	/**
+	 * This method runs the experiments of a sampling scheme with several thresholds per
+	 * experiment and computes the statistics. The experiments are independent units; the
+	 * variance of the estimator comes from the spread of the unit means, the interval uses the
+	 * t quantile on units - 1 degrees of freedom, and the effective sample size is the
+	 * single-threshold variance divided by the same variance of the estimator.
+	 */
+	private void summarize(int N, int T, long seed, Sampling sampling, ExecutorService executor,
+			int tasks) {
+		int size = PercolationTrial.size(sampling);		// Thresholds per unit.
+		double[] threshold = new double[T * size];
+		PercolationTrial.runAll(N, seed, sampling, 0, T, threshold, executor, tasks, null);
 		
-		return (double) count / (N * N);
+		RunningStats single = new RunningStats();	// Single thresholds.
+		RunningStats unit = new RunningStats();		// Unit means.
+		for (int u = 0; u < T; u++) {
+			double sum = 0.0;
+			for (int b = 0; b < size; b++) {
+				single.add(threshold[u * size + b]);
+				sum += threshold[u * size + b];
+			}
+			unit.add(sum / size);
+		}
+		double variance = unit.variance() / T;	// The variance of the estimate.
 		
+		trials = T;
+		mean = unit.mean();
+		stddev = single.stddev();
+		double halfWidth = RunningStats.t95(T - 1) * Math.sqrt(variance);
+		confidenceLo = mean - halfWidth;
+		confidenceHi = mean + halfWidth;
+		effectiveSampleSize = variance > 0.0 ? single.variance() / variance : trials;
+	}
+	
+	/**
+	 * This method copies the final statistics out of the accumulator.
+	 */
+	private void finish(RunningStats stats) {
+		trials = (int) stats.count();
+		mean = stats.mean();		// Mean of the threshold values of T times experiment.
+		stddev = stats.stddev();	// Standard deviation of the threshold values.
+		confidenceLo = stats.confidenceLo();
+			// Confidence interval lower value of the threshold values of T times experiment.
+		confidenceHi = stats.confidenceHi();
+			// Confidence interval higher value of the threshold values of T times experiment.
+		effectiveSampleSize = trials;	// Independent experiments.
 	}
 	
 	public double mean() { return mean; }
 	public double stddev() { return stddev; }
 	public double confidenceLo() { return confidenceLo; }
 	public double confidenceHi() { return confidenceHi; }
+	public int trials() { return trials; }
+	
+	/**
+	 * This method returns the number of independent experiments that would give a confidence
+	 * interval as narrow as this one. It equals trials() for independent experiments; a larger
+	 * value means the sampling scheme saved experiments.
+	 */
+	public double effectiveSampleSize() { return effectiveSampleSize; }
 
 	public static void main(String[] args) {
+		int N = args.length > 0 ? Integer.parseInt(args[0]) : 800;
+		int T = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+		int threads = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		
+		Sampling sampling = args.length > 3 ? Sampling.valueOf(args[3].toUpperCase())
+				: Sampling.INDEPENDENT;
+		
 		PercolationStats stats;
-		stats = new PercolationStats(800, 90);
+		stats = new PercolationStats(N, T, new SplittableRandom().nextLong(), sampling, threads);
 		
 		System.out.println(stats.confidenceLo());
 		System.out.println(stats.confidenceHi());
 		System.out.println(stats.mean());
 		System.out.println(stats.stddev());
+		if (sampling != Sampling.INDEPENDENT) System.out.println(stats.effectiveSampleSize());
 		
 	}
 	
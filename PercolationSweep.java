@@ -0,0 +1,264 @@
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class runs a finite-size scaling sweep: threshold experiments on a list of grid sizes N
+ * within one trial budget, and an extrapolation of the threshold to the infinite grid. By finite
+ * size scaling the mean threshold of an N-by-N grid behaves as
+ *
+ *     p(N) = p(inf) + a * N^(-1/nu),   nu = 4/3,
+ *
+ * so p(inf) is the intercept of a least-squares line through the points (N^(-3/4), mean of N).
+ *
+ * The intercept is a weighted sum of the means, p(inf) = sum of w(N) * mean(N), with weights
+ * that only depend on the sizes. Its variance, sum of w(N)^2 * sigma(N)^2 / T(N), is smallest for
+ * a given total when T(N) is proportional to |w(N)| * sigma(N). The sweep therefore first runs a
+ * pilot of PILOT experiments per size to estimate sigma(N), splits the rest of the budget in
+ * that proportion, and then completes the sizes one by one. The line of a size is written as
+ * soon as the size is done, followed by a last line for the extrapolation.
+ *
+ * All sizes run in one JVM on the same threads, and every thread keeps one PercolationTrial
+ * built for the largest N, which the other sizes reuse without allocating. Experiment k of size
+ * N uses the seed PercolationTrial.seed(PercolationTrial.seed(seed, N), k), so the results do
+ * not depend on the number of threads or the order of the sizes.
+ */
+public class PercolationSweep {
+
+	/**
+	 * The output formats, one line per size in both.
+	 * CSV: a header line, then N,trials,mean,stddev,confidenceLo,confidenceHi. The last line has
+	 *       N = inf, the budget used as trials, p(inf) as mean, and in the stddev column the
+	 *       standard error of p(inf), not a standard deviation; the slope is not written.
+	 * JSON: one JSON object per line with the same fields. The last line has "N": "inf", and
+	 *       "standardError" and "slope" instead of "stddev".
+	 */
+	public enum Format { CSV, JSON }
+
+	private static final double NU = 4.0 / 3.0;	// Correlation length exponent in 2D.
+	private static final int PILOT = 30;	// Experiments per size used to estimate sigma(N).
+
+	private final int[] sizes;	// The grid sizes.
+	private final int[] trials;	// The number of experiments per size.
+	private final double[] mean;	// The mean threshold per size.
+	private final double[] stddev;	// The standard deviation of the threshold per size.
+	private double pInfinity;	// The extrapolated threshold.
+	private double standardError;	// The standard error of pInfinity.
+	private double slope;	// The fitted coefficient a.
+
+	/**
+	 * This method runs the sweep and writes the results to out as they come.
+	 * @param sizes the grid sizes, at least two different ones.
+	 * @param budget the total number of experiments, at least two per size.
+	 * @param seed the master seed.
+	 * @param threads the number of threads to use.
+	 * @param out where the results are written, or null.
+	 * @param format the output format.
+	 */
+	public PercolationSweep(int[] sizes, int budget, long seed, int threads, PrintStream out,
+			Format format) {
+		int count = sizes.length;
+		if (count < 2 || budget < 2 * count || threads <= 0) {
+			throw new IllegalArgumentException();
+		}
+		int largestN = 0;
+		for (int N : sizes) {
+			if (N <= 0) {
+				throw new IllegalArgumentException("The grid sizes must be positive!");
+			}
+			largestN = Math.max(largestN, N);
+		}
+
+		this.sizes = sizes.clone();
+		trials = new int[count];
+		mean = new double[count];
+		stddev = new double[count];
+
+		double[] x = new double[count];		// N^(-1/nu) of every size.
+		double xMean = 0.0;
+		for (int k = 0; k < count; k++) {
+			x[k] = Math.pow(sizes[k], -1.0 / NU);
+			xMean += x[k] / count;
+		}
+		double squares = 0.0;
+		for (int k = 0; k < count; k++) {
+			squares += (x[k] - xMean) * (x[k] - xMean);
+		}
+		if (squares == 0.0) {
+			throw new IllegalArgumentException("At least two different sizes are needed!");
+		}
+		double[] weight = new double[count];	// Least-squares weights of the intercept.
+		double[] slopeWeight = new double[count];	// The same for the slope.
+		for (int k = 0; k < count; k++) {
+			slopeWeight[k] = (x[k] - xMean) / squares;
+			weight[k] = 1.0 / count - xMean * slopeWeight[k];
+		}
+
+		int tasks = threads;
+		ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+		PercolationTrial[] pool = new PercolationTrial[tasks];	// Runners for the largest N.
+		for (int t = 0; t < tasks; t++) {
+			pool[t] = new PercolationTrial(largestN);
+		}
+
+		try {
+			int pilot = Math.min(PILOT, budget / count);
+			RunningStats[] stats = new RunningStats[count];
+			for (int k = 0; k < count; k++) {
+				stats[k] = new RunningStats();
+				run(sizes[k], seed, 0, pilot, stats[k], executor, tasks, pool);
+			}
+
+			int[] target = allocate(budget, pilot, weight, stats);
+
+			if (out != null && format == Format.CSV) {
+				out.println("N,trials,mean,stddev,confidenceLo,confidenceHi");
+			}
+			for (int k = 0; k < count; k++) {
+				run(sizes[k], seed, pilot, target[k], stats[k], executor, tasks, pool);
+				trials[k] = (int) stats[k].count();
+				mean[k] = stats[k].mean();
+				stddev[k] = stats[k].stddev();
+				if (out != null) {
+					print(out, format, Integer.toString(sizes[k]), trials[k], mean[k], stddev[k],
+							stats[k].confidenceLo(), stats[k].confidenceHi());
+				}
+			}
+		}
+		finally {
+			if (executor != null) executor.shutdownNow();
+		}
+
+		double variance = 0.0;
+		for (int k = 0; k < count; k++) {
+			pInfinity += weight[k] * mean[k];
+			slope += slopeWeight[k] * mean[k];
+			variance += weight[k] * weight[k] * stddev[k] * stddev[k] / trials[k];
+		}
+		standardError = Math.sqrt(variance);
+
+		if (out != null) {
+			print(out, format, "inf", budget, pInfinity, standardError,
+					pInfinity - 1.96 * standardError, pInfinity + 1.96 * standardError);
+			out.flush();
+		}
+	}
+
+	/**
+	 * This method runs experiments from to to of size N and adds their thresholds to stats in
+	 * experiment order.
+	 */
+	private static void run(int N, long seed, int from, int to, RunningStats stats,
+			ExecutorService executor, int tasks, PercolationTrial[] pool) {
+		if (to <= from) return;
+		double[] threshold = new double[to - from];
+		PercolationTrial.runAll(N, PercolationTrial.seed(seed, N),
+				PercolationStats.Sampling.INDEPENDENT, from, to, threshold, executor, tasks, pool);
+		for (double value : threshold) {
+			stats.add(value);
+		}
+	}
+
+	/**
+	 * This method splits the budget into a number of experiments per size proportional to
+	 * |weight| * sigma, with at least the pilot for every size. Sizes whose share falls below
+	 * the pilot keep the pilot and the others share the rest, until every share is at least the
+	 * pilot; the shares are then rounded so they add up to the budget.
+	 */
+	private static int[] allocate(int budget, int pilot, double[] weight, RunningStats[] stats) {
+		int count = weight.length;
+		double[] score = new double[count];		// |weight| * sigma of every size.
+		for (int k = 0; k < count; k++) {
+			double sigma = stats[k].stddev();
+			score[k] = Math.abs(weight[k]) * (sigma > 0.0 ? sigma : 0.0);
+		}
+
+		boolean[] fixed = new boolean[count];	// Sizes held at the pilot.
+		double[] share = new double[count];
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			double left = budget;
+			double total = 0.0;
+			int free = 0;
+			for (int k = 0; k < count; k++) {
+				if (fixed[k]) left -= pilot;
+				else {
+					total += score[k];
+					free++;
+				}
+			}
+			for (int k = 0; k < count; k++) {
+				if (fixed[k]) share[k] = pilot;
+				else share[k] = total > 0.0 ? left * score[k] / total : left / free;
+			}
+			for (int k = 0; k < count; k++) {
+				if (!fixed[k] && share[k] < pilot) {
+					fixed[k] = true;
+					changed = true;
+				}
+			}
+		}
+
+		int[] target = new int[count];
+		int used = 0;
+		for (int k = 0; k < count; k++) {
+			target[k] = Math.max(pilot, (int) share[k]);
+			used += target[k];
+		}
+		while (used < budget) {		// Hand out what rounding down left over.
+			int best = 0;
+			for (int k = 1; k < count; k++) {
+				if (share[k] - target[k] > share[best] - target[best]) best = k;
+			}
+			target[best]++;
+			used++;
+		}
+		return target;
+	}
+
+	/**
+	 * This method writes one line of results. The line of the fit, N = "inf", has the standard
+	 * error as spread, and in JSON also the slope.
+	 */
+	private void print(PrintStream out, Format format, String N, int trials, double mean,
+			double spread, double lo, double hi) {
+		boolean fit = N.equals("inf");
+		if (format == Format.CSV) {
+			out.println(N + "," + trials + "," + mean + "," + spread + "," + lo + "," + hi);
+		}
+		else {
+			out.println("{\"N\": " + (fit ? "\"inf\"" : N) + ", \"trials\": " + trials
+					+ ", \"mean\": " + mean + (fit ? ", \"standardError\": " : ", \"stddev\": ")
+					+ spread + (fit ? ", \"slope\": " + slope : "") + ", \"confidenceLo\": " + lo
+					+ ", \"confidenceHi\": " + hi + "}");
+		}
+		out.flush();
+	}
+
+	public int[] sizes() { return sizes.clone(); }
+	public int trials(int k) { return trials[k]; }
+	public double mean(int k) { return mean[k]; }
+	public double stddev(int k) { return stddev[k]; }
+	public double pInfinity() { return pInfinity; }
+	public double standardError() { return standardError; }
+	public double slope() { return slope; }
+
+	/**
+	 * Usage: java PercolationSweep csv|json budget N1 N2 [N3 ...]
+	 * For example "csv 2000 16 32 64 128 256".
+	 */
+	public static void main(String[] args) {
+		Format format = Format.valueOf(args[0].toUpperCase());
+		int budget = Integer.parseInt(args[1]);
+		int[] sizes = new int[args.length - 2];
+		for (int a = 0; a < sizes.length; a++) {
+			sizes[a] = Integer.parseInt(args[a + 2]);
+		}
+
+		new PercolationSweep(sizes, budget, new SplittableRandom().nextLong(),
+				Runtime.getRuntime().availableProcessors(), System.out, format);
+	}
+
+}
@@ -0,0 +1,381 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs single percolation experiments on an N-by-N grid, or on a LatticePercolation.
+ * The grid and the buffer of site indices are allocated once and reused, so one instance should
+ * be kept per thread.
+ *
+ * Every experiment opens sites in the order of a random permutation, built one step at a time
+ * with a Fisher-Yates shuffle, so every draw opens a new site. The permutation comes from a
+ * SplittableRandom seeded with the experiment's own seed, see seed().
+ */
+class PercolationTrial {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;	// Odd constant, as in
+																	// SplittableRandom.
+
+	private final Percolation perco;	// The grid, reset before each experiment, or null.
+	private final LatticePercolation lattice;	// The lattice instead of the grid, or null.
+	private int[] sites;	// Site numbers 0 .. N*N-1, or the element numbers of the lattice,
+							// shuffled while sites are opened.
+	private int dim;	// The grid dimension.
+	private int total;	// The number of sites in use, N * N, or the lattice's elements().
+	private final boolean openEdges;	// Whether the grid has open boundaries.
+	private int[] links;	// BOTH_AXES only: the union-find links of the sites.
+	private byte[] edges;	// BOTH_AXES only: the OPEN and edge flags of the sites.
+
+	static final int MIN_TRIALS = 30;	// Experiments done before an early stop.
+
+	private static final byte OPEN = 1;		// Flags of edges[]: the site is open,
+	private static final byte TOP = 2;		// and its component touches the top, bottom,
+	private static final byte BOTTOM = 4;	// left or right edge of the grid.
+	private static final byte LEFT = 8;
+	private static final byte RIGHT = 16;
+	private static final int SIDES = TOP | BOTTOM | LEFT | RIGHT;
+
+	/**
+	 * Construct a trial runner for an N-by-N grid.
+	 * @param N the grid dimension
+	 */
+	PercolationTrial(int N) {
+		this(N, Percolation.Boundary.OPEN);
+	}
+
+	/**
+	 * Construct a trial runner for an N-by-N grid with the given boundary conditions.
+	 * @param N the grid dimension
+	 * @param boundary the boundary conditions
+	 */
+	PercolationTrial(int N, Percolation.Boundary boundary) {
+		dim = N;
+		total = N * N;
+		perco = new Percolation(N, boundary);
+		lattice = null;
+		openEdges = boundary == Percolation.Boundary.OPEN;
+		sites = new int[total];
+	}
+
+	/**
+	 * Construct a trial runner that opens the sites or bonds of the given lattice, in the order
+	 * of their element numbers (see LatticePercolation.openElement()). The lattice belongs to
+	 * the runner from now on.
+	 * @param lattice the lattice
+	 */
+	PercolationTrial(LatticePercolation lattice) {
+		perco = null;
+		this.lattice = lattice;
+		openEdges = false;
+		total = lattice.elements();
+		sites = new int[total];
+	}
+
+	/**
+	 * This method makes the runner work on an N-by-N grid. The buffers are kept when they are
+	 * large enough, so a runner built for the largest grid of a series serves all of them.
+	 * A lattice runner keeps its lattice and ignores N.
+	 * @param N the grid dimension
+	 */
+	void resize(int N) {
+		if (N == dim || lattice != null) return;
+		dim = N;
+		total = N * N;
+		perco.reset(N);
+		if (sites.length < total) sites = new int[total];
+	}
+
+	/**
+	 * This method derives the seed of experiment k from the master seed of a run. Seeds depend
+	 * only on (master, k), so an experiment gives the same result whichever thread runs it.
+	 * @param master the master seed
+	 * @param k the experiment number, starting from 0
+	 * @return the seed of experiment k
+	 */
+	static long seed(long master, long k) {
+		long z = master + (k + 1) * GOLDEN_GAMMA;	// Same mixing as SplittableRandom.
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * This method performs the experiment one time.
+	 * @param seed the seed of the experiment
+	 * @return the fraction of sites that are opened when the system percolates.
+	 */
+	double run(long seed) {
+		int count = open(new SplittableRandom(seed));
+		return total == 0 ? 0.0 : (double) count / total;	// A lattice may have no bonds.
+	}
+
+	/**
+	 * This method closes all sites of the grid or all elements of the lattice.
+	 */
+	private void clear() {
+		if (lattice != null) lattice.reset();
+		else perco.reset();
+	}
+
+	/**
+	 * This method opens site number site of the grid, or element number site of the lattice.
+	 */
+	private void openSite(int site) {
+		if (lattice != null) lattice.openElement(site);
+		else perco.open(site / dim + 1, site % dim + 1);
+	}
+
+	/**
+	 * This method tells whether the grid or the lattice percolates.
+	 */
+	private boolean percolates() {
+		return lattice != null ? lattice.percolates() : perco.percolates();
+	}
+
+	/**
+	 * This method resets the grid and opens random sites until the system percolates. Afterwards
+	 * sites[0, count) holds the opened sites in order and the rest of sites is still unshuffled,
+	 * so shuffle() can continue the same permutation.
+	 * @return count, the number of sites opened
+	 */
+	private int open(SplittableRandom random) {
+
+		clear();
+		for (int k = 0; k < total; k++) {
+			sites[k] = k;
+		}
+
+		int count = 0;		// The number of open sites.
+		while (!percolates()) {
+			int pick = count + random.nextInt(total - count);	// Swap a random unused site
+			int site = sites[pick];								// into position count.
+			sites[pick] = sites[count];
+			sites[count] = site;
+
+			openSite(site);
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * This method performs one sampling unit of a run: unit k of the given sampling scheme. The
+	 * thresholds of the unit are stored from threshold[at * size()].
+	 * @param sampling the sampling scheme
+	 * @param seed the master seed of the run
+	 * @param k the unit number
+	 * @param at where to store the results
+	 */
+	void runUnit(PercolationStats.Sampling sampling, long seed, int k, int at,
+			double[] threshold) {
+		switch (sampling) {
+		case INDEPENDENT:
+			threshold[at] = run(seed(seed, k));
+			break;
+		case BOTH_AXES:
+			runBothAxes(seed(seed, k), threshold, 2 * at);
+			break;
+		}
+	}
+
+	/**
+	 * This method returns the number of thresholds in one sampling unit.
+	 */
+	static int size(PercolationStats.Sampling sampling) {
+		return sampling == PercolationStats.Sampling.BOTH_AXES ? 2 : 1;
+	}
+
+	/**
+	 * This method performs one experiment that is watched on both axes: the sites of one random
+	 * permutation are opened until the grid spans both from top to bottom and from left to
+	 * right. The two fractions are stored in threshold[at] and threshold[at + 1]. The first one
+	 * is the same as run() with this seed, since the permutation is drawn the same way. Both
+	 * have the distribution of the threshold, by symmetry, but they are only weakly correlated,
+	 * and the second costs only the few sites opened after the first crossing.
+	 */
+	private void runBothAxes(long seed, double[] threshold, int at) {
+		if (lattice != null || !openEdges) {
+			throw new IllegalArgumentException("BOTH_AXES needs an N-by-N grid with open edges!");
+		}
+		if (links == null || links.length < total) {
+			links = new int[total];
+			edges = new byte[total];
+		}
+		for (int k = 0; k < total; k++) {
+			sites[k] = k;
+			links[k] = -1;		// Every site is its own root of size 1.
+			edges[k] = 0;
+		}
+
+		SplittableRandom random = new SplittableRandom(seed);
+		int vertical = 0;	// The number of open sites at the first crossing of each axis,
+		int horizontal = 0;	// or 0 before it.
+		int count = 0;
+		while (vertical == 0 || horizontal == 0) {
+			int pick = count + random.nextInt(total - count);	// As in open().
+			int site = sites[pick];
+			sites[pick] = sites[count];
+			sites[count] = site;
+			count++;
+
+			int i = site / dim;
+			int j = site % dim;
+			int flags = OPEN;
+			if (i == 0) flags |= TOP;
+			if (i == dim - 1) flags |= BOTTOM;
+			if (j == 0) flags |= LEFT;
+			if (j == dim - 1) flags |= RIGHT;
+			edges[site] = (byte) flags;
+
+			int root = site;
+			if (i > 0) root = join(root, site - dim);
+			if (i < dim - 1) root = join(root, site + dim);
+			if (j > 0) root = join(root, site - 1);
+			if (j < dim - 1) root = join(root, site + 1);
+
+			if (vertical == 0 && (edges[root] & (TOP | BOTTOM)) == (TOP | BOTTOM)) {
+				vertical = count;
+			}
+			if (horizontal == 0 && (edges[root] & (LEFT | RIGHT)) == (LEFT | RIGHT)) {
+				horizontal = count;
+			}
+		}
+		threshold[at] = (double) vertical / total;
+		threshold[at + 1] = (double) horizontal / total;
+	}
+
+	/**
+	 * This method joins the component of root with the one of site n if n is open.
+	 * @return the root of the joined component
+	 */
+	private int join(int root, int n) {
+		if ((edges[n] & OPEN) == 0) return root;
+		int s = UnionFind.find(links, n);
+		return s == root ? root : UnionFind.link(links, edges, root, s, SIDES);
+	}
+
+	/**
+	 * This method performs experiments from (inclusive) to to (exclusive) of a run and stores the
+	 * threshold of experiment k in threshold[k - from]. The experiments are handed out to the
+	 * given number of tasks on executor, each task with its own grid; with a null executor they
+	 * run on the calling thread. The results do not depend on the number of tasks.
+	 * @param N the grid dimension
+	 * @param seed the master seed of the run
+	 * @param from the first experiment
+	 * @param to one past the last experiment
+	 * @param threshold the array receiving the results
+	 * @param executor the executor to run on, or null
+	 * @param tasks the number of tasks to submit to executor
+	 */
+	static void runAll(int N, long seed, int from, int to, double[] threshold,
+			ExecutorService executor, int tasks) {
+		runAll(N, seed, PercolationStats.Sampling.INDEPENDENT, from, to, threshold, executor,
+				tasks, null);
+	}
+
+	/**
+	 * This method is runAll() for units of any sampling scheme: unit k is stored as described at
+	 * runUnit(), with at = k - from. Task t runs on pool[t], resized to N, so a series of runs
+	 * can share runners built once for its largest grid; pool must then hold a runner for every
+	 * task, and with a null pool each task builds its own. A pool of lattice runners runs its
+	 * lattices, whatever N is.
+	 */
+	static void runAll(final int N, final long seed, final PercolationStats.Sampling sampling,
+			final int from, final int to, final double[] threshold, ExecutorService executor,
+			int tasks, final PercolationTrial[] pool) {
+		if (executor == null || tasks <= 1 || to - from <= 1) {
+			PercolationTrial trial = runner(pool, 0, N);
+			for (int k = from; k < to; k++) {
+				trial.runUnit(sampling, seed, k, k - from, threshold);
+			}
+			return;
+		}
+
+		final AtomicInteger next = new AtomicInteger(from);	// The next experiment to hand out.
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int t = 0; t < Math.min(tasks, to - from); t++) {
+			final int task = t;
+			futures.add(executor.submit(new Callable<Void>() {
+				public Void call() {
+					PercolationTrial trial = runner(pool, task, N);
+					for (int k = next.getAndIncrement(); k < to; k = next.getAndIncrement()) {
+						trial.runUnit(sampling, seed, k, k - from, threshold);
+					}
+					return null;
+				}
+			}));
+		}
+
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for experiments", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		finally {
+			for (Future<Void> future : futures) {
+				future.cancel(true);	// Only has an effect if another task failed.
+			}
+		}
+	}
+
+	/**
+	 * This method runs experiments 0 to T - 1 of a run on the runners of pool in batches, and
+	 * feeds them, in experiment order, into a streaming accumulator until T experiments are done
+	 * or, after MIN_TRIALS, the confidence interval is narrower than epsilon (0 never stops
+	 * early). Thresholds computed past the stopping point are dropped, so the result does not
+	 * depend on the number of tasks.
+	 * @param N the grid dimension, see runAll()
+	 * @param seed the master seed of the run
+	 * @param T the most experiments to run
+	 * @param epsilon the wanted half-width of the confidence interval, or 0
+	 * @param executor the executor to run on, or null
+	 * @param tasks the number of tasks to submit to executor
+	 * @param pool a runner for every task
+	 * @return the statistics of the experiments used
+	 */
+	static RunningStats runUntil(int N, long seed, int T, double epsilon,
+			ExecutorService executor, int tasks, PercolationTrial[] pool) {
+		RunningStats stats = new RunningStats();	// Streaming mean and variance.
+
+		int batch = epsilon > 0.0 ? Math.min(T, Math.max(MIN_TRIALS, 4 * tasks)) : T;
+		double[] threshold = new double[batch];
+							// Thresholds of the current batch of experiments.
+
+		for (int from = 0; from < T; from += batch) {
+			int to = Math.min(T, from + batch);
+			runAll(N, seed, PercolationStats.Sampling.INDEPENDENT, from, to, threshold, executor,
+					tasks, pool);
+
+			for (int k = from; k < to; k++) {
+				stats.add(threshold[k - from]);
+				if (k + 1 >= MIN_TRIALS && stats.halfWidth() < epsilon) return stats;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * This method returns the runner for task t: pool[t] resized to N, or a new runner if there
+	 * is no pool.
+	 */
+	private static PercolationTrial runner(PercolationTrial[] pool, int t, int N) {
+		if (pool == null) return new PercolationTrial(N);
+		pool[t].resize(N);
+		return pool[t];
+	}
+
+}
@@ -0,0 +1,261 @@
+import java.util.Arrays;
+
+/**
+ * This class is a version of Percolation whose opens can be taken back, for "what if" questions
+ * such as whether opening a few more sites would make the system percolate. checkpoint() marks
+ * the current state and rollbackTo() returns to it, in time proportional to the number of
+ * changes made since the checkpoint rather than to the size of the grid.
+ *
+ * Every change to the union-find or the flags is recorded on an undo stack as (slot, old value)
+ * before it is made. To keep the number of changes per union constant, the union-find uses union
+ * by size without path compression, so find() takes O(log N) steps.
+ */
+public class RollbackPercolation {
+
+	private static final byte OPEN = 1;		// The site is open.
+	private static final byte TOP = 2;		// The component is connected to the top row.
+	private static final byte BOTTOM = 4;	// The component is connected to the bottom row.
+	private static final byte SPANNING = TOP | BOTTOM;
+
+	private static final int PERCOLATE_SLOT = Integer.MIN_VALUE;	// Undo slot of isPercolate.
+
+	private final int[] parent;	// Union-find links, or -size of the component at a root.
+	private final byte[] state;	// OPEN, TOP and BOTTOM bits of every site.
+
+	private int[] undoSlot;	// Changed slot: k for parent[k], ~k for state[k], or PERCOLATE_SLOT.
+	private int[] undoValue;	// The value the slot had before the change.
+	private int undoSize;	// The number of entries on the undo stack.
+
+	private boolean isPercolate;	// Track whether the system percolates.
+	private final int dim;	// The number of sites per row/col.
+
+
+	/**
+	 * Construct a NxN grid site, with all sites blocked.
+	 * @param N the grid dimension
+	 */
+	public RollbackPercolation(int N) {
+
+		if (N <= 0 || N > 46340) {
+			throw new IllegalArgumentException("The input N must be positive and at most 46340!");
+		}
+
+		dim = N;
+		parent = new int[N * N];
+		state = new byte[N * N];
+		Arrays.fill(parent, -1);	// Every site starts as its own component of size 1.
+
+		undoSlot = new int[16];
+		undoValue = new int[16];
+	}
+
+	/**
+	 * This method checks whether the input indices are valid row and column indices.
+	 * If not, an IndexOutOfBoundsException is thrown.
+	 * @param i row index
+	 * @param j column index
+	 */
+	private void validateIndex(int i, int j) {
+		if (i < 1 || i > dim || j > dim || j < 1) {
+			throw new IndexOutOfBoundsException("The site index is out of bound!");
+		}
+	}
+
+	/**
+	 * This method gets the 0-based site index of the site at row i col j.
+	 */
+	private int getIndex(int i, int j) {
+		return dim * (i - 1) + (j - 1);
+	}
+
+	/**
+	 * This method pushes one entry on the undo stack, doubling it when it is full.
+	 */
+	private void record(int slot, int oldValue) {
+		if (undoSize == undoSlot.length) {
+			undoSlot = Arrays.copyOf(undoSlot, 2 * undoSize);
+			undoValue = Arrays.copyOf(undoValue, 2 * undoSize);
+		}
+		undoSlot[undoSize] = slot;
+		undoValue[undoSize] = oldValue;
+		undoSize++;
+	}
+
+	private void setParent(int k, int value) {
+		record(k, parent[k]);
+		parent[k] = value;
+	}
+
+	private void setState(int k, byte value) {
+		record(~k, state[k]);
+		state[k] = value;
+	}
+
+	/**
+	 * This method finds the root of the component containing site k. The path is not
+	 * compressed, so that find() never changes anything that would have to be undone.
+	 */
+	private int find(int k) {
+		while (parent[k] >= 0) {
+			k = parent[k];
+		}
+		return k;
+	}
+
+	/**
+	 * This method merges the component with root r and the component containing site k, linking
+	 * the smaller under the larger and merging the TOP and BOTTOM flags at the new root.
+	 * @param r a root
+	 * @param k index of any site
+	 * @return the root of the merged component
+	 */
+	private int union(int r, int k) {
+		int s = find(k);
+		if (r == s) return r;	// Already in the same component.
+
+		if (parent[r] > parent[s]) {	// Sizes are stored negated, so r is the smaller one.
+			int tmp = r;
+			r = s;
+			s = tmp;
+		}
+		setParent(r, parent[r] + parent[s]);
+		setParent(s, r);
+		if ((state[s] & SPANNING & ~state[r]) != 0) {
+			setState(r, (byte) (state[r] | (state[s] & SPANNING)));
+		}
+		return r;
+	}
+
+	/**
+	 * This method opens site (row i, column j) if it is not opened already.
+	 * @param i row index
+	 * @param j col index
+	 */
+	public void open(int i, int j) {
+
+		validateIndex(i, j);
+
+		int index = getIndex(i, j);
+		if ((state[index] & OPEN) != 0) return;	// The site is already opened.
+
+		byte flags = OPEN;
+		if (i == 1) flags |= TOP;
+		if (i == dim) flags |= BOTTOM;
+		setState(index, flags);
+
+		int root = index;
+		if (j > 1 && (state[index - 1] & OPEN) != 0) root = union(root, index - 1);
+		if (j < dim && (state[index + 1] & OPEN) != 0) root = union(root, index + 1);
+		if (i > 1 && (state[index - dim] & OPEN) != 0) root = union(root, index - dim);
+		if (i < dim && (state[index + dim] & OPEN) != 0) root = union(root, index + dim);
+
+		if (!isPercolate && (state[root] & SPANNING) == SPANNING) {
+			record(PERCOLATE_SLOT, 0);
+			isPercolate = true;
+		}
+	}
+
+	/**
+	 * This method marks the current state so it can be restored with rollbackTo().
+	 * @return the checkpoint, to be passed to rollbackTo()
+	 */
+	public int checkpoint() {
+		return undoSize;
+	}
+
+	/**
+	 * This method undoes every open() made since the given checkpoint was taken. Checkpoints
+	 * taken after it become invalid.
+	 * @param checkpoint a value returned by checkpoint()
+	 */
+	public void rollbackTo(int checkpoint) {
+		if (checkpoint < 0 || checkpoint > undoSize) {
+			throw new IllegalArgumentException("The checkpoint is no longer valid!");
+		}
+
+		while (undoSize > checkpoint) {
+			undoSize--;
+			int slot = undoSlot[undoSize];
+			if (slot == PERCOLATE_SLOT) isPercolate = undoValue[undoSize] != 0;
+			else if (slot >= 0) parent[slot] = undoValue[undoSize];
+			else state[~slot] = (byte) undoValue[undoSize];
+		}
+	}
+
+	/**
+	 * This method tells whether opening the given sites would make the system percolate,
+	 * leaving the system unchanged.
+	 * @param rows row indices of the sites
+	 * @param cols col indices of the sites, cols[k] belongs to rows[k]
+	 * @return true if the system would percolate
+	 */
+	public boolean wouldPercolate(int[] rows, int[] cols) {
+		if (rows.length != cols.length) {
+			throw new IllegalArgumentException("The row and column arrays must have equal length!");
+		}
+
+		int checkpoint = checkpoint();
+		try {
+			for (int k = 0; k < rows.length && !isPercolate; k++) {
+				open(rows[k], cols[k]);
+			}
+			return isPercolate;
+		}
+		finally {
+			rollbackTo(checkpoint);
+		}
+	}
+
+	/**
+	 * This method returns true if a site specified at (row i, column j) is open, false otherwise.
+	 * @param i row index for the site.
+	 * @param j col index for the site.
+	 * @return true if a site specified at (row i, column j) is open, false otherwise.
+	 */
+	public boolean isOpen(int i, int j) {
+		validateIndex(i, j);
+		return (state[getIndex(i, j)] & OPEN) != 0;
+	}
+
+	/**
+	 * This method returns true if a site specified at (row i, column j) is full, false otherwise.
+	 * @param i row index for the site.
+	 * @param j col index for the site.
+	 * @return true if a site specified at (row i, column j) is full, false otherwise.
+	 */
+	public boolean isFull(int i, int j) {
+		validateIndex(i, j);
+		return (state[find(getIndex(i, j))] & TOP) != 0;
+	}
+
+	/**
+	 * This method tells whether the system percolates. It returns true if yes, false otherwise.
+	 * @return true if the system percolates, else otherwise.
+	 */
+	public boolean percolates() {
+		return isPercolate;
+	}
+
+
+	public static void main(String[] args) {
+
+		RollbackPercolation testPerco = new RollbackPercolation(4);
+
+		testPerco.open(1, 3);
+		testPerco.open(2, 3);
+		testPerco.open(3, 3);
+
+		int before = testPerco.checkpoint();
+		testPerco.open(4, 3);
+		System.out.println("Percolates after opening (4, 3): " + testPerco.percolates());
+		testPerco.rollbackTo(before);
+		System.out.println("Percolates after the rollback: " + testPerco.percolates());
+		System.out.println("Site (4, 3) open after the rollback: " + testPerco.isOpen(4, 3));
+
+		System.out.println("Would (4, 2) percolate: "
+				+ testPerco.wouldPercolate(new int[] {4}, new int[] {2}));
+		System.out.println("Would (3, 2), (4, 2) percolate: "
+				+ testPerco.wouldPercolate(new int[] {3, 4}, new int[] {2, 2}));
+	}
+
+}
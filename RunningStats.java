@@ -0,0 +1,140 @@
+/**
+ * This class accumulates the mean and variance of a stream of values in one pass with Welford's
+ * method, without storing the values. Adding a value costs O(1), and the running mean, standard
+ * deviation and 95% confidence interval can be read at any time.
+ */
+public class RunningStats {
+
+	private long count;		// The number of values added.
+	private double mean;	// The mean of the values added.
+	private double squares;	// The sum of squared deviations from the mean.
+
+	/**
+	 * Construct an accumulator with no values.
+	 */
+	public RunningStats() {
+	}
+
+	/**
+	 * Construct an accumulator from a saved state, as returned by count(), mean() and squares().
+	 */
+	public RunningStats(long count, double mean, double squares) {
+		if (count < 0 || squares < 0.0) {
+			throw new IllegalArgumentException();
+		}
+		this.count = count;
+		this.mean = count > 0 ? mean : 0.0;
+		this.squares = count > 0 ? squares : 0.0;
+	}
+
+	/**
+	 * This method adds one value.
+	 * @param x the value
+	 */
+	public void add(double x) {
+		count++;
+		double delta = x - mean;
+		mean += delta / count;
+		squares += delta * (x - mean);
+	}
+
+	/**
+	 * This method adds all values of another accumulator, with the pairwise update of Chan,
+	 * Golub and LeVeque. The result equals adding the other values one by one up to rounding.
+	 * @param other the accumulator to merge in, which is not changed
+	 */
+	public void merge(RunningStats other) {
+		if (other.count == 0) return;
+		if (count == 0) {
+			count = other.count;
+			mean = other.mean;
+			squares = other.squares;
+			return;
+		}
+
+		long total = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / total;
+		squares += other.squares + delta * delta * ((double) count * other.count / total);
+		count = total;
+	}
+
+	public long count() { return count; }
+	public double mean() { return mean; }
+
+	/**
+	 * This method returns the sum of squared deviations from the mean, the third part of the
+	 * state with count() and mean().
+	 */
+	public double squares() { return squares; }
+
+	/**
+	 * This method returns the sample variance, or NaN with fewer than 2 values.
+	 */
+	public double variance() {
+		return count > 1 ? squares / (count - 1) : Double.NaN;
+	}
+
+	public double stddev() { return Math.sqrt(variance()); }
+
+	/**
+	 * This method returns the half-width of the 95% confidence interval of the mean.
+	 */
+	public double halfWidth() {
+		return 1.96 * stddev() / Math.sqrt((double) count);
+	}
+
+	public double confidenceLo() { return mean - halfWidth(); }
+	public double confidenceHi() { return mean + halfWidth(); }
+
+	/**
+	 * This method returns the two-sided 95% quantile of Student's t distribution with df degrees
+	 * of freedom, for intervals from few values: 12.706 for 1, 2.042 for 30, and 1.96 in the
+	 * limit. It bisects the closed form of P(|t| < x) for integer df, and uses the
+	 * Cornish-Fisher expansion beyond 1000 degrees of freedom.
+	 * @param df the degrees of freedom
+	 * @return the quantile, or NaN if df < 1
+	 */
+	public static double t95(long df) {
+		if (df < 1) return Double.NaN;
+		double z = 1.959963984540054;	// The normal quantile.
+		if (df > 1000) {
+			double z2 = z * z;
+			return z + z * (z2 + 1) / (4.0 * df)
+					+ z * ((5 * z2 + 16) * z2 + 3) / (96.0 * df * df);
+		}
+		double lo = z;
+		double hi = 13.0;
+		for (int k = 0; k < 60; k++) {
+			double x = 0.5 * (lo + hi);
+			if (within(x, df) < 0.95) lo = x;
+			else hi = x;
+		}
+		return 0.5 * (lo + hi);
+	}
+
+	/**
+	 * This method returns P(|t| < x) for Student's t distribution with df degrees of freedom,
+	 * from the finite series in theta = atan(x / sqrt(df)).
+	 */
+	private static double within(double x, long df) {
+		double theta = Math.atan(x / Math.sqrt(df));
+		double c2 = Math.cos(theta) * Math.cos(theta);
+		double sum = 1.0;
+		double term = 1.0;
+		if (df % 2 == 1) {
+			for (long k = 3; k <= df - 2; k += 2) {
+				term *= c2 * (k - 1) / k;
+				sum += term;
+			}
+			double tail = df > 1 ? Math.sin(theta) * Math.cos(theta) * sum : 0.0;
+			return 2.0 / Math.PI * (theta + tail);
+		}
+		for (long k = 2; k <= df - 2; k += 2) {
+			term *= c2 * (k - 1) / k;
+			sum += term;
+		}
+		return Math.sin(theta) * sum;
+	}
+
+}
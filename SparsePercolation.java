@@ -0,0 +1,242 @@
+/**
+ * This class is a version of Percolation for grids where only a small fraction of the sites is
+ * ever opened. Percolation allocates arrays for all N^2 sites up front; here the union-find
+ * state of the open sites is kept in an open-addressing hash table keyed by site index, so
+ * memory grows with the number of open sites instead of the area of the grid. A blocked site
+ * is simply absent from the table. The API is the same as Percolation, and callers pick this
+ * class when they expect few open sites.
+ *
+ * The table uses linear probing over parallel primitive arrays (key, link, flags), and is
+ * doubled when it is half full, so it takes between 18 and 36 bytes per open site. Percolation
+ * takes 5 bytes per site, so it is the cheaper one once more than 15 to 25 percent of the
+ * sites are open.
+ */
+public class SparsePercolation {
+
+	private static final byte TOP = 2;		// The component is connected to the top row.
+	private static final byte BOTTOM = 4;	// The component is connected to the bottom row.
+	private static final byte SPANNING = TOP | BOTTOM;
+
+	private int[] keys;		// Site index + 1 of every slot, 0 for an empty slot.
+	private int[] links;	// Parent site index, or -size of the component at a root.
+	private byte[] flags;	// TOP and BOTTOM bits, meaningful at a root.
+	private int size;		// The number of open sites.
+	private int mask;		// The capacity minus one; the capacity is a power of two.
+	private int shift;		// 32 - log2(capacity), see home().
+
+	private boolean isPercolate;	// Track whether the system percolates.
+	private final int dim;	// The number of sites per row/col.
+
+
+	/**
+	 * Construct a NxN grid site, with all sites blocked.
+	 * @param N the grid dimension
+	 */
+	public SparsePercolation(int N) {
+
+		if (N <= 0 || N > 46340) {
+			throw new IllegalArgumentException("The input N must be positive and at most 46340!");
+		}
+
+		dim = N;
+		allocate(16);
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		links = new int[capacity];
+		flags = new byte[capacity];
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+	}
+
+	/**
+	 * This method checks whether the input indices are valid row and column indices.
+	 * If not, an IndexOutOfBoundsException is thrown.
+	 * @param i row index
+	 * @param j column index
+	 */
+	private void validateIndex(int i, int j) {
+		if (i < 1 || i > dim || j > dim || j < 1) {
+			throw new IndexOutOfBoundsException("The site index is out of bound!");
+		}
+	}
+
+	/**
+	 * This method gets the 0-based site index of the site at row i col j.
+	 */
+	private int getIndex(int i, int j) {
+		return dim * (i - 1) + (j - 1);
+	}
+
+	/**
+	 * This method returns the slot where probing for a key starts: the top log2(capacity) bits
+	 * of the key times 2^32 / golden ratio (Fibonacci hashing), which spread neighboring site
+	 * indices over the whole table at any capacity.
+	 */
+	private int home(int key) {
+		return (key * 0x9e3779b9) >>> shift;
+	}
+
+	/**
+	 * This method returns the slot of site k, or -1 if the site is blocked.
+	 */
+	private int slot(int k) {
+		int key = k + 1;
+		for (int s = home(key); keys[s] != 0; s = (s + 1) & mask) {
+			if (keys[s] == key) return s;
+		}
+		return -1;
+	}
+
+	/**
+	 * This method adds site k as a new component of its own and returns its slot.
+	 */
+	private int insert(int k, byte siteFlags) {
+		if (2 * (size + 1) > keys.length) grow();
+
+		int key = k + 1;
+		int s = home(key);
+		while (keys[s] != 0) {
+			s = (s + 1) & mask;
+		}
+		keys[s] = key;
+		links[s] = -1;
+		flags[s] = siteFlags;
+		size++;
+		return s;
+	}
+
+	/**
+	 * This method doubles the table, moving every entry to its slot in the new one.
+	 */
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldLinks = links;
+		byte[] oldFlags = flags;
+		allocate(2 * oldKeys.length);
+
+		for (int o = 0; o < oldKeys.length; o++) {
+			if (oldKeys[o] == 0) continue;
+			int s = home(oldKeys[o]);
+			while (keys[s] != 0) {
+				s = (s + 1) & mask;
+			}
+			keys[s] = oldKeys[o];
+			links[s] = oldLinks[o];
+			flags[s] = oldFlags[o];
+		}
+	}
+
+	/**
+	 * This method finds the slot of the root of the component containing the site in slot s,
+	 * with path halving.
+	 */
+	private int find(int s) {
+		while (links[s] >= 0) {
+			int p = slot(links[s]);
+			if (links[p] < 0) return p;
+			links[s] = links[p];	// Link the site to its grandparent.
+			s = slot(links[p]);
+		}
+		return s;
+	}
+
+	/**
+	 * This method merges the component with root slot r and the component containing site k,
+	 * linking the smaller under the larger and merging the TOP and BOTTOM flags.
+	 * @return the slot of the root of the merged component
+	 */
+	private int union(int r, int k) {
+		int s = find(slot(k));
+		if (r == s) return r;	// Already in the same component.
+
+		if (links[r] > links[s]) {	// Sizes are stored negated, so r is the smaller one.
+			int tmp = r;
+			r = s;
+			s = tmp;
+		}
+		links[r] += links[s];
+		links[s] = keys[r] - 1;
+		flags[r] |= flags[s] & SPANNING;
+		return r;
+	}
+
+	/**
+	 * This method opens site (row i, column j) if it is not opened already.
+	 * @param i row index
+	 * @param j col index
+	 */
+	public void open(int i, int j) {
+
+		validateIndex(i, j);
+
+		int index = getIndex(i, j);
+		if (slot(index) >= 0) return;	// The site is already opened.
+
+		byte siteFlags = 0;
+		if (i == 1) siteFlags |= TOP;
+		if (i == dim) siteFlags |= BOTTOM;
+		int root = insert(index, siteFlags);
+
+		// A neighbor is open exactly when it is in the table. The table only grows in insert(),
+		// so the slots stay valid through the unions.
+		if (j > 1 && slot(index - 1) >= 0) root = union(root, index - 1);
+		if (j < dim && slot(index + 1) >= 0) root = union(root, index + 1);
+		if (i > 1 && slot(index - dim) >= 0) root = union(root, index - dim);
+		if (i < dim && slot(index + dim) >= 0) root = union(root, index + dim);
+
+		if ((flags[root] & SPANNING) == SPANNING) isPercolate = true;
+	}
+
+	/**
+	 * This method returns true if a site specified at (row i, column j) is open, false otherwise.
+	 * @param i row index for the site.
+	 * @param j col index for the site.
+	 * @return true if a site specified at (row i, column j) is open, false otherwise.
+	 */
+	public boolean isOpen(int i, int j) {
+		validateIndex(i, j);
+		return slot(getIndex(i, j)) >= 0;
+	}
+
+	/**
+	 * This method returns true if a site specified at (row i, column j) is full, false otherwise.
+	 * @param i row index for the site.
+	 * @param j col index for the site.
+	 * @return true if a site specified at (row i, column j) is full, false otherwise.
+	 */
+	public boolean isFull(int i, int j) {
+		validateIndex(i, j);
+		int s = slot(getIndex(i, j));
+		return s >= 0 && (flags[find(s)] & TOP) != 0;
+	}
+
+	/**
+	 * This method tells whether the system percolates. It returns true if yes, false otherwise.
+	 * @return true if the system percolates, else otherwise.
+	 */
+	public boolean percolates() {
+		return isPercolate;
+	}
+
+	/**
+	 * This method returns the number of open sites.
+	 */
+	public int numberOfOpenSites() {
+		return size;
+	}
+
+
+	public static void main(String[] args) {
+
+		SparsePercolation perco = new SparsePercolation(40000);	// 1.6 billion sites.
+		for (int i = 1; i <= 40000; i++) {
+			perco.open(i, 20000);
+		}
+		System.out.println("Open sites: " + perco.numberOfOpenSites());
+		System.out.println("The system percolates: " + perco.percolates());
+		System.out.println("Site (1, 1) is full: " + perco.isFull(1, 1));
+	}
+
+}
@@ -0,0 +1,154 @@
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * This class checks whether a fixed, fully known grid percolates while reading it row by row,
+ * with the Hoshen-Kopelman labeling method. Building a Percolation costs O(N^2) memory; here only
+ * two rows of cluster labels and a label table of 2N entries are kept, so memory is O(N) and
+ * grids far larger than the heap can be checked straight from disk.
+ *
+ * The grid is read with TextIO: first the grid dimension N, then N rows of N values, 1 for an
+ * open site and 0 for a blocked site, separated by whitespace.
+ *
+ * Every open site gets the label of its open upper or left neighbor, or a new label; when both
+ * neighbors are open with different labels, the labels are joined in a small union-find that
+ * also carries a flag telling whether the cluster reaches the top row. After each row, the
+ * labels in use are renumbered 1, 2, ... so the table never grows beyond 2N. A cluster can
+ * only reach the top through the row above, so reading stops early once a row has no label
+ * connected to the top.
+ */
+public class StreamingPercolation {
+
+	/**
+	 * This method reads a grid from a file and tells whether it percolates.
+	 * @param fileName the name of the file
+	 * @return true if the grid percolates
+	 */
+	public static boolean percolates(String fileName) {
+		TextIO.readFile(fileName);
+		try {
+			return check();
+		}
+		finally {
+			TextIO.readStandardInput();		// Close the file.
+		}
+	}
+
+	/**
+	 * This method reads a grid from a stream and tells whether it percolates. The stream is
+	 * left open, as it belongs to the caller, but TextIO reads it through a buffer, so bytes
+	 * after the grid may have been consumed as well.
+	 * @param in the stream
+	 * @return true if the grid percolates
+	 */
+	public static boolean percolates(InputStream in) {
+		TextIO.readStream(new FilterInputStream(in) {
+			public void close() {}		// TextIO closes its source when it is done with it.
+		});
+		try {
+			return check();
+		}
+		finally {
+			TextIO.readStandardInput();
+		}
+	}
+
+	/**
+	 * This method does the check on the current TextIO input.
+	 */
+	private static boolean check() {
+		int N = TextIO.getInt();
+		if (N <= 0) {
+			throw new IllegalArgumentException("The grid dimension must be positive!");
+		}
+
+		int[] above = new int[N];	// Labels of the previous row, 0 for a blocked site.
+		int[] row = new int[N];		// Labels of the current row.
+		int[] link = new int[2 * N + 1];	// Label union-find: parent of every label.
+		boolean[] top = new boolean[2 * N + 1];	// Whether a root label reaches the top row.
+		int[] renumber = new int[2 * N + 1];	// New number of every root after a row.
+		boolean[] renumberedTop = new boolean[N + 1];
+
+		for (int r = 0; r < N; r++) {
+			int next = N + 1;	// Labels of the previous row are 1..N, new ones start above.
+
+			for (int c = 0; c < N; c++) {
+				int value = TextIO.getInt();
+				if (value != 0 && value != 1) {
+					throw new IllegalArgumentException("Sites must be 0 or 1, found " + value);
+				}
+				if (value == 0) {
+					row[c] = 0;
+					continue;
+				}
+
+				int up = above[c] == 0 ? 0 : find(link, above[c]);
+				int left = c == 0 || row[c - 1] == 0 ? 0 : find(link, row[c - 1]);
+
+				if (up == 0 && left == 0) {		// A new cluster.
+					link[next] = next;
+					top[next] = r == 0;
+					row[c] = next++;
+				}
+				else if (up == 0 || left == 0 || up == left) {
+					row[c] = up == 0 ? left : up;
+				}
+				else {		// Two clusters meet: join them.
+					link[left] = up;
+					top[up] = top[up] || top[left];
+					row[c] = up;
+				}
+			}
+
+			// Renumber the roots used in this row as 1, 2, ... for the next row.
+			int labels = 0;
+			boolean anyTop = false;
+			for (int c = 0; c < N; c++) {
+				if (row[c] == 0) continue;
+				int root = find(link, row[c]);
+				if (renumber[root] == 0) {
+					renumber[root] = ++labels;
+					renumberedTop[labels] = top[root];
+					anyTop = anyTop || top[root];
+				}
+				row[c] = renumber[root];
+			}
+
+			if (!anyTop) return false;	// No cluster below can reach the top any more.
+			if (r == N - 1) return true;	// Some site of the bottom row reaches the top.
+
+			for (int l = 0; l < link.length; l++) {
+				renumber[l] = 0;
+			}
+			for (int l = 1; l <= labels; l++) {
+				link[l] = l;
+				top[l] = renumberedTop[l];
+			}
+
+			int[] swap = above;
+			above = row;
+			row = swap;
+		}
+		return false;	// Not reached.
+	}
+
+	/**
+	 * This method finds the root label of label l, halving the path.
+	 */
+	private static int find(int[] link, int l) {
+		while (link[l] != l) {
+			link[l] = link[link[l]];
+			l = link[l];
+		}
+		return l;
+	}
+
+
+	/**
+	 * Usage: java StreamingPercolation grid.txt
+	 */
+	public static void main(String[] args) {
+		System.out.println("The grid percolates: " + percolates(args[0]));
+	}
+
+}
@@ -0,0 +1,226 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class holds the results of a range of experiments of one run, experiments from
+ * (inclusive) to to (exclusive) of the total experiments of the run on an N-by-N grid with
+ * given boundary conditions and a master seed, of which the first count are done, and reads
+ * and writes them as a small binary file.
+ * The results are the streaming statistics of the thresholds in experiment order and,
+ * optionally, the thresholds themselves.
+ * Since the seed of experiment k is PercolationTrial.seed(seed, k), the count is all the random
+ * number state a run needs to continue where it stopped, and the statistics continue exactly
+ * as if the run had not stopped.
+ *
+ * The layout is big-endian: int magic "PTHR", int version, int N, byte boundary, long seed,
+ * int from, int to, int total, int count, double mean, double sum of squared deviations,
+ * byte 1 if the thresholds follow, then count doubles if they do. A file is written to a
+ * temporary file of its own next to it, flushed to the disk and renamed over the old one, so a
+ * crash, or another process writing the same file, leaves either the old or a new file.
+ */
+class ThresholdFile {
+
+	private static final int MAGIC = 0x50544852;	// "PTHR"
+	private static final int VERSION = 4;
+
+	static final long INTERVAL = 5000;	// Default milliseconds between the saves of run().
+
+	final int N;		// The grid dimension.
+	final Percolation.Boundary boundary;	// The boundary conditions of the grid.
+	final long seed;	// The master seed of the run.
+	final int from;		// The first experiment.
+	final int to;		// One past the last experiment.
+	final int total;	// The number of experiments of the whole run.
+	final double[] threshold;	// threshold[k - from]: the result of experiment k, or null if
+								// only the statistics are kept.
+	RunningStats stats;	// The statistics of the done experiments, added in order.
+	int count;			// Experiments from to from + count - 1 are done.
+
+	/**
+	 * Construct an empty range of experiments.
+	 * @param total the number of experiments of the whole run, at least to
+	 * @param raw whether the thresholds are kept, not just their statistics
+	 */
+	ThresholdFile(int N, Percolation.Boundary boundary, long seed, int from, int to, int total,
+			boolean raw) {
+		if (N <= 0 || boundary == null || from < 0 || to < from || total < to) {
+			throw new IllegalArgumentException();
+		}
+		this.N = N;
+		this.boundary = boundary;
+		this.seed = seed;
+		this.from = from;
+		this.to = to;
+		this.total = total;
+		threshold = raw ? new double[to - from] : null;
+		stats = new RunningStats();
+	}
+
+	/**
+	 * This method tells whether this range belongs to the run (N, boundary, seed) of total
+	 * experiments and covers experiments from to to.
+	 */
+	boolean matches(int N, Percolation.Boundary boundary, long seed, int from, int to,
+			int total) {
+		return this.N == N && this.boundary == boundary && this.seed == seed && this.from == from
+				&& this.to == to && this.total == total;
+	}
+
+	/**
+	 * This method tells whether all experiments of the range are done.
+	 */
+	boolean done() {
+		return count == to - from;
+	}
+
+	/**
+	 * This method performs the experiments of the range that are not done yet, in batches of 4
+	 * per task. The range is saved to file after a batch when interval milliseconds have passed
+	 * since the last save, and once more at the end, so a long run costs a few writes instead
+	 * of one rewrite of the whole file per batch.
+	 * @param file the file, or null not to save
+	 * @param interval the least milliseconds between two saves, Long.MAX_VALUE to save only at
+	 *        the end
+	 * @param executor the executor to run on, or null to run on the calling thread
+	 * @param tasks the number of tasks to submit to executor
+	 */
+	void run(File file, long interval, ExecutorService executor, int tasks) throws IOException {
+		int batch = 4 * Math.max(1, tasks);
+		double[] buffer = new double[Math.min(batch, to - from)];
+		PercolationTrial[] pool = null;		// Runners for the boundary conditions.
+		long wait = TimeUnit.MILLISECONDS.toNanos(interval);
+		long saved = System.nanoTime();		// When the file was last saved, or the run began.
+		int start = count;
+
+		for (int k = from + count; k < to; k += batch) {
+			int end = Math.min(to, k + batch);
+			if (pool == null) {
+				pool = new PercolationTrial[executor == null ? 1 : Math.max(1, tasks)];
+				for (int t = 0; t < pool.length; t++) {
+					pool[t] = new PercolationTrial(N, boundary);
+				}
+			}
+			PercolationTrial.runAll(N, seed, PercolationStats.Sampling.INDEPENDENT, k, end, buffer,
+					executor, tasks, pool);
+			for (int j = k; j < end; j++) {
+				stats.add(buffer[j - k]);
+				if (threshold != null) threshold[j - from] = buffer[j - k];
+			}
+			count = end - from;
+			if (file != null && end < to && System.nanoTime() - saved >= wait) {
+				write(file);
+				saved = System.nanoTime();
+			}
+		}
+		if (file != null && count > start) write(file);
+	}
+
+	/**
+	 * This method reads a file written by write().
+	 * @param file the file
+	 * @return the range of experiments in the file
+	 */
+	static ThresholdFile read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a threshold file!");
+			}
+			int N = in.readInt();
+			int mode = in.readByte();
+			long seed = in.readLong();
+			int from = in.readInt();
+			int to = in.readInt();
+			int total = in.readInt();
+			int count = in.readInt();
+			double mean = in.readDouble();
+			double squares = in.readDouble();
+			boolean raw = in.readBoolean();
+			if (N <= 0 || mode < 0 || mode >= Percolation.Boundary.values().length || from < 0
+					|| to < from || total < to || count < 0 || count > to - from) {
+				throw new IOException(file + " has a corrupt header!");
+			}
+
+			ThresholdFile range = new ThresholdFile(N, Percolation.Boundary.values()[mode], seed,
+					from, to, total, raw);
+			range.count = count;
+			range.stats = new RunningStats(count, mean, squares);
+			for (int k = 0; raw && k < count; k++) {
+				range.threshold[k] = in.readDouble();
+			}
+			return range;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * This method writes the range to file, replacing it atomically. The temporary file is
+	 * deleted if the write fails; only a JVM that dies midway leaves it behind, named
+	 * file.getName() + digits + ".tmp".
+	 * @param file the file
+	 */
+	void write(File file) throws IOException {
+		File temp = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(),
+				file.getName(), ".tmp").toFile();
+		boolean moved = false;
+		try {
+			save(temp);
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+		}
+		finally {
+			if (!moved) temp.delete();
+		}
+	}
+
+	/**
+	 * This method writes the range to the temporary file temp and flushes it to the disk.
+	 */
+	private void save(File temp) throws IOException {
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(N);
+			out.writeByte(boundary.ordinal());
+			out.writeLong(seed);
+			out.writeInt(from);
+			out.writeInt(to);
+			out.writeInt(total);
+			out.writeInt(count);
+			out.writeDouble(stats.mean());
+			out.writeDouble(stats.squares());
+			out.writeBoolean(threshold != null);
+			for (int k = 0; threshold != null && k < count; k++) {
+				out.writeDouble(threshold[k]);
+			}
+			out.flush();
+			stream.getFD().sync();		// On the disk before it replaces the old file.
+		}
+		finally {
+			stream.close();
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+/**
+ * This class holds the union-find steps that Percolation and LatticePercolation share: a single
+ * int[] holds the parent links, each root stores the negated size of its component, and a
+ * byte[] of per-site flags is merged at the root by every union. The methods are static, so
+ * the JIT inlines them into the engines' hot paths.
+ */
+class UnionFind {
+
+	private UnionFind() { }
+
+	/**
+	 * This method finds the root of the component containing site k. Path halving is applied on
+	 * the way up: every other site on the path is re-linked to its grandparent.
+	 * @param parent the parent links
+	 * @param k index of the site
+	 * @return the root of the component containing k
+	 */
+	static int find(int[] parent, int k) {
+		while (parent[k] >= 0) {
+			int p = parent[k];
+			if (parent[p] >= 0) {
+				parent[k] = parent[p];	// Halve the path: link k to its grandparent.
+				k = parent[p];
+			}
+			else return p;
+		}
+		return k;
+	}
+
+	/**
+	 * This method merges two different roots r and s. The smaller component is linked under the
+	 * larger one, and the flags of mask are merged into the surviving root in the same step.
+	 * @param parent the parent links
+	 * @param state the flags of every site
+	 * @param mask the flags that describe a whole component
+	 * @return the surviving root
+	 */
+	static int link(int[] parent, byte[] state, int r, int s, int mask) {
+		if (parent[r] > parent[s]) {	// Sizes are stored negated, so r is the smaller one.
+			int tmp = r;
+			r = s;
+			s = tmp;
+		}
+		parent[r] += parent[s];		// r becomes the root of the merged component.
+		parent[s] = r;
+		state[r] |= state[s] & mask;
+		return r;
+	}
+
+}